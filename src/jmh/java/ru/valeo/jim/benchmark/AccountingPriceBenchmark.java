@@ -0,0 +1,63 @@
+package ru.valeo.jim.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.InstrumentPosition;
+import ru.valeo.jim.domain.Money;
+
+/** Calculation of accounting price of positions by buy and sell totals. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountingPriceBenchmark {
+
+    @Param({"10", "1000"})
+    private int positions;
+
+    private final int scale = new ApplicationConfig().getBigdecimalOperationsScale();
+    private List<InstrumentPosition> positionList;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(1);
+        positionList = BenchmarkData.portfolio(BenchmarkData.instruments(positions), random).getPositions();
+    }
+
+    /** Accounting price of every position as calculated by OperationsProcessor. */
+    @Benchmark
+    public void accountingPrice(Blackhole blackhole) {
+        for (var position : positionList) {
+            blackhole.consume(Money.divideFloor(position.getBuyTotalPrice().subtract(position.getSellTotalPrice()),
+                    position.getAmount(), scale));
+        }
+    }
+
+    /** The same as accountingPrice with BigDecimal division, baseline for Money. */
+    @Benchmark
+    public void accountingPriceBigDecimal(Blackhole blackhole) {
+        for (var position : positionList) {
+            blackhole.consume(position.getBuyTotalPrice().subtract(position.getSellTotalPrice())
+                    .divide(BigDecimal.valueOf(position.getAmount()), scale, RoundingMode.FLOOR));
+        }
+    }
+}
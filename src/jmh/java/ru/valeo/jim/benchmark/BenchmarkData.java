@@ -0,0 +1,140 @@
+package ru.valeo.jim.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import ru.valeo.jim.domain.Currency;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.InstrumentCategory;
+import ru.valeo.jim.domain.InstrumentCategoryTargetDistribution;
+import ru.valeo.jim.domain.InstrumentPosition;
+import ru.valeo.jim.domain.InstrumentPrice;
+import ru.valeo.jim.domain.InstrumentType;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.domain.OperationType;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.repository.InstrumentPriceRepository;
+
+/** Generated domain objects for benchmarks without database, the same seed gives the same data. */
+final class BenchmarkData {
+
+    static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+    static final Currency USD = new Currency().setCode("USD");
+    /** Categories of seed data. */
+    static final List<InstrumentCategory> CATEGORIES = List.of(
+            new InstrumentCategory().setCode("SHR"),
+            new InstrumentCategory().setCode("GOVB"),
+            new InstrumentCategory().setCode("CORPB"),
+            new InstrumentCategory().setCode("ETFB"),
+            new InstrumentCategory().setCode("ETFSHR"),
+            new InstrumentCategory().setCode("ETFGLD"));
+    /** Target percents of categories in the same order. */
+    private static final int[] TARGET_PERCENTS = {30, 20, 20, 10, 10, 10};
+
+    private BenchmarkData() {
+    }
+
+    static List<Instrument> instruments(int count) {
+        List<Instrument> instruments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            instruments.add(new Instrument()
+                    .setSymbol("BNCH" + i)
+                    .setName("Benchmark instrument " + i)
+                    .setType(InstrumentType.SHARE)
+                    .setBaseCurrency(USD)
+                    .setCategory(CATEGORIES.get(i % CATEGORIES.size())));
+        }
+        return instruments;
+    }
+
+    /** Portfolio with one position for every instrument and target distribution by all categories. */
+    static Portfolio portfolio(List<Instrument> instruments, Random random) {
+        var portfolio = new Portfolio()
+                .setName("BENCH")
+                .setCurrency(USD)
+                .setAvailableMoney(new BigDecimal("1000000.00"))
+                .setPositions(new ArrayList<>())
+                .setCategoryTargetDistributions(new ArrayList<>());
+        for (int i = 0; i < CATEGORIES.size(); i++) {
+            portfolio.getCategoryTargetDistributions().add(new InstrumentCategoryTargetDistribution()
+                    .setPortfolio(portfolio)
+                    .setCategory(CATEGORIES.get(i))
+                    .setPercent(BigDecimal.valueOf(TARGET_PERCENTS[i])));
+        }
+        for (var instrument : instruments) {
+            var amount = 1 + random.nextInt(1000);
+            var price = price(random);
+            portfolio.addPosition(new InstrumentPosition()
+                    .setPortfolio(portfolio)
+                    .setInstrument(instrument)
+                    .setAmount(amount)
+                    .setAccountingPrice(price)
+                    .setBuyTotalPrice(price.multiply(BigDecimal.valueOf(amount))));
+        }
+        return portfolio;
+    }
+
+    /** Buy and sell operations of instruments in portfolio, amount of instrument never gets negative.
+     * Instruments are sold by the lowest buy price, so accounting prices never get negative. */
+    static List<Operation> operations(Portfolio portfolio, List<Instrument> instruments, int count, Random random) {
+        List<Operation> operations = new ArrayList<>(count);
+        var amounts = new int[instruments.size()];
+        var sellPrices = new BigDecimal[instruments.size()];
+        for (int i = 0; i < sellPrices.length; i++) {
+            sellPrices[i] = price(random);
+        }
+        for (int i = 0; i < count; i++) {
+            var index = random.nextInt(instruments.size());
+            var sell = amounts[index] > 0 && random.nextInt(3) == 0;
+            var amount = sell ? 1 + random.nextInt(amounts[index]) : 1 + random.nextInt(100);
+            amounts[index] += sell ? -amount : amount;
+            operations.add(new Operation()
+                    .setType(sell ? OperationType.SELL : OperationType.BUY)
+                    .setPortfolio(portfolio)
+                    .setInstrument(instruments.get(index))
+                    .setAmount(amount)
+                    .setPrice(sell ? sellPrices[index] : sellPrices[index].add(price(random)))
+                    .setWhenAdd(START.plusMinutes(i)));
+        }
+        return operations;
+    }
+
+    /** Daily prices of every instrument starting from START. */
+    static List<InstrumentPrice> prices(List<Instrument> instruments, int pricesPerInstrument, Random random) {
+        List<InstrumentPrice> prices = new ArrayList<>(instruments.size() * pricesPerInstrument);
+        long id = 0;
+        for (var instrument : instruments) {
+            for (int i = 0; i < pricesPerInstrument; i++) {
+                prices.add(new InstrumentPrice()
+                        .setId(++id)
+                        .setInstrument(instrument)
+                        .setPrice(price(random))
+                        .setWhenAdd(START.plusDays(i)));
+            }
+        }
+        return prices;
+    }
+
+    /** Repository returning prices from memory, only finding by instrument is supported. */
+    static InstrumentPriceRepository priceRepository(List<InstrumentPrice> prices) {
+        var pricesBySymbol = prices.stream()
+                .collect(Collectors.groupingBy(price -> price.getInstrument().getSymbol()));
+        return (InstrumentPriceRepository) Proxy.newProxyInstance(BenchmarkData.class.getClassLoader(),
+                new Class<?>[]{InstrumentPriceRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findByInstrument")) {
+                        return pricesBySymbol.getOrDefault(((Instrument) args[0]).getSymbol(), List.of());
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /** Price from 1.00 to 10000.00. */
+    static BigDecimal price(Random random) {
+        return BigDecimal.valueOf(100 + random.nextInt(999_900), 2);
+    }
+}
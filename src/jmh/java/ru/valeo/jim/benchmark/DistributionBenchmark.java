@@ -0,0 +1,70 @@
+package ru.valeo.jim.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.dto.PortfolioInstrumentsDistributionDto;
+import ru.valeo.jim.dto.PortfolioRebalancePropositionDto;
+import ru.valeo.jim.service.InstrumentPriceCache;
+import ru.valeo.jim.service.PortfolioRebalanceHelper;
+
+/** Distribution of portfolio by actual prices and rebalance proposition, prices are taken from warmed up cache. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DistributionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int positions;
+    @Param({"10", "1000"})
+    private int pricesPerInstrument;
+
+    private final ApplicationConfig applicationConfig = new ApplicationConfig();
+    private Portfolio portfolio;
+    private Map<Instrument, BigDecimal> actualPrices;
+    private PortfolioRebalanceHelper rebalanceHelper;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(1);
+        var instruments = BenchmarkData.instruments(positions);
+        portfolio = BenchmarkData.portfolio(instruments, random);
+        applicationConfig.setPriceCacheMaxInstruments(positions);
+        var priceCache = new InstrumentPriceCache(
+                BenchmarkData.priceRepository(BenchmarkData.prices(instruments, pricesPerInstrument, random)),
+                applicationConfig);
+        actualPrices = priceCache.getPrices(instruments, LocalDateTime.now());
+        rebalanceHelper = new PortfolioRebalanceHelper(priceCache, applicationConfig);
+    }
+
+    @Benchmark
+    public PortfolioInstrumentsDistributionDto byActualPrice() {
+        return PortfolioInstrumentsDistributionDto.byActualPrice(portfolio.getPositions(), actualPrices,
+                applicationConfig.getBigdecimalOperationsScale());
+    }
+
+    @Benchmark
+    public PortfolioRebalancePropositionDto rebalance() {
+        return rebalanceHelper.rebalance(portfolio, true);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.valeo.jim.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.service.OperationsProcessor;
+
+/** Replay of operations log by OperationsProcessor. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OperationsProcessorBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int instruments;
+    @Param({"1000", "100000"})
+    private int operations;
+
+    private final OperationsProcessor processor = new OperationsProcessor(new ApplicationConfig());
+    private Portfolio portfolio;
+    private List<Operation> log;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(1);
+        var instrumentList = BenchmarkData.instruments(instruments);
+        portfolio = BenchmarkData.portfolio(List.of(), random);
+        log = BenchmarkData.operations(portfolio, instrumentList, operations, random);
+    }
+
+    /** Apply all operations to empty portfolio. */
+    @Benchmark
+    public Portfolio replay() {
+        portfolio.setPositions(new ArrayList<>()).setAvailableMoney(BigDecimal.valueOf(Long.MAX_VALUE, 2));
+        for (var operation : log) {
+            processor.apply(operation);
+        }
+        return portfolio;
+    }
+}
@@ -0,0 +1,111 @@
+package ru.valeo.jim.benchmark;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.valeo.jim.JimApplication;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.dto.InstrumentDto;
+import ru.valeo.jim.dto.PortfolioDto;
+import ru.valeo.jim.dto.operation.BuyInstrumentDto;
+import ru.valeo.jim.dto.operation.SellInstrumentDto;
+import ru.valeo.jim.service.InstrumentsService;
+import ru.valeo.jim.service.OperationsService;
+import ru.valeo.jim.service.PortfolioService;
+
+/** Processing of new operations by OperationsService in portfolio with large operations history.
+ * Application is started with in-memory database, history is imported before measurement. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OperationsServiceBenchmark {
+
+    private static final String PORTFOLIO = "BENCH";
+
+    @Param({"10", "1000"})
+    private int instruments;
+    @Param({"1000", "100000"})
+    private int operations;
+
+    private ConfigurableApplicationContext context;
+    private OperationsService operationsService;
+    private BuyInstrumentDto buy;
+    private SellInstrumentDto sell;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SpringApplication.run(JimApplication.class,
+                "--spring.datasource.url=jdbc:h2:mem:jim-bench",
+                "--spring.shell.interactive.enabled=false",
+                "--spring.shell.script.enabled=false",
+                "--logging.level.root=WARN");
+        operationsService = context.getBean(OperationsService.class);
+        var whenAddFormatter = DateTimeFormatter.ofPattern(
+                context.getBean(ApplicationConfig.class).getOperationWhenAddFormat());
+
+        var portfolioDto = new PortfolioDto();
+        portfolioDto.setName(PORTFOLIO);
+        portfolioDto.setCurrencyCode("USD");
+        portfolioDto.setAvailableMoney(BigDecimal.ZERO);
+        context.getBean(PortfolioService.class).save(portfolioDto);
+
+        var random = new Random(1);
+        var instrumentList = BenchmarkData.instruments(instruments);
+        var instrumentsService = context.getBean(InstrumentsService.class);
+        for (var instrument : instrumentList) {
+            instrumentsService.save(InstrumentDto.from(instrument));
+        }
+        var history = new StringBuilder("ADD_MONEY,,,1000000000000,,,")
+                .append(BenchmarkData.START.minusDays(1).format(whenAddFormatter)).append('\n');
+        for (var operation : BenchmarkData.operations(null, instrumentList, operations, random)) {
+            history.append(operation.getType()).append(',')
+                    .append(operation.getInstrument().getSymbol()).append(',')
+                    .append(operation.getAmount()).append(',')
+                    .append(operation.getPrice()).append(",,,")
+                    .append(operation.getWhenAdd().format(whenAddFormatter)).append('\n');
+        }
+        var result = operationsService.importOperations(PORTFOLIO, new StringReader(history.toString()));
+        if (result.getFailed() > 0) {
+            throw new IllegalStateException("History is not imported: " + result.getErrors());
+        }
+
+        var symbol = instrumentList.get(0).getSymbol();
+        buy = BuyInstrumentDto.builder().portfolioName(PORTFOLIO).symbol(symbol).amount(1)
+                .price(new BigDecimal("10.5")).build();
+        sell = SellInstrumentDto.builder().portfolioName(PORTFOLIO).symbol(symbol).amount(1)
+                .price(new BigDecimal("10.5")).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /** Buy and sell of the same instrument by the same price, so position stays the same. */
+    @Benchmark
+    public SellInstrumentDto buyAndSell() {
+        operationsService.buyInstrument(buy);
+        return operationsService.sellInstrument(sell);
+    }
+}
@@ -0,0 +1,65 @@
+package ru.valeo.jim.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.service.InstrumentPriceCache;
+
+/** Construction of latest prices map by InstrumentPriceCache at the end and in the middle of price history. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PriceCacheBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int instruments;
+    @Param({"10", "1000"})
+    private int pricesPerInstrument;
+
+    private List<Instrument> instrumentList;
+    private InstrumentPriceCache priceCache;
+    private LocalDateTime middleOfHistory;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(1);
+        instrumentList = BenchmarkData.instruments(instruments);
+        var applicationConfig = new ApplicationConfig();
+        applicationConfig.setPriceCacheMaxInstruments(instruments);
+        priceCache = new InstrumentPriceCache(
+                BenchmarkData.priceRepository(BenchmarkData.prices(instrumentList, pricesPerInstrument, random)),
+                applicationConfig);
+        priceCache.getPrices(instrumentList, LocalDateTime.now());
+        middleOfHistory = BenchmarkData.START.plusDays(pricesPerInstrument / 2).plusHours(12);
+    }
+
+    @Benchmark
+    public Map<Instrument, BigDecimal> latestPrices() {
+        return priceCache.getPrices(instrumentList, LocalDateTime.now());
+    }
+
+    @Benchmark
+    public Map<Instrument, BigDecimal> pricesAtDate() {
+        return priceCache.getPrices(instrumentList, middleOfHistory);
+    }
+}
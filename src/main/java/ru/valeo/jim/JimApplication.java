@@ -7,7 +7,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class JimApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(JimApplication.class, args);
+		// exit code of script mode, context is closed after shell is quit
+		System.exit(SpringApplication.exit(SpringApplication.run(JimApplication.class, args)));
 	}
 
 }
@@ -0,0 +1,59 @@
+package ru.valeo.jim.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.shell.jline.InteractiveShellApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/** Batch mode: executes scripts instead of interactive shell, {@code java -jar jim.jar --script=ops.jim}.
+ * Results are printed to standard output, exit code is 1 if any command failed. */
+@Order(InteractiveShellApplicationRunner.PRECEDENCE - 50)
+@RequiredArgsConstructor
+@Component
+public class BatchScriptApplicationRunner implements ApplicationRunner, ExitCodeGenerator {
+    static final String SCRIPT_OPTION = "script";
+
+    private final ScriptRunner scriptRunner;
+    private final ConfigurableEnvironment environment;
+    private boolean failed;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(SCRIPT_OPTION)) {
+            return;
+        }
+        InteractiveShellApplicationRunner.disable(environment);
+        var files = args.getOptionValues(SCRIPT_OPTION).stream()
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toList());
+        if (files.isEmpty()) {
+            // --script ops.jim: file is not option value
+            files = args.getNonOptionArgs();
+        }
+        for (var file : files) {
+            try (var reader = Files.newBufferedReader(Path.of(file))) {
+                var result = scriptRunner.run(reader, 0);
+                failed |= result.getFailed() > 0;
+                System.out.println(file + ": " + result);
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                System.out.println(file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return failed ? 1 : 0;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.valeo.jim.cli;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import static java.util.Optional.ofNullable;
+
+/** Result of failed command, shell prints its message, script runner reports command as failed. */
+@Getter
+@RequiredArgsConstructor
+public class CommandError {
+    private final String message;
+
+    public CommandError(Throwable e) {
+        this(ofNullable(e.getMessage()).orElseGet(() -> e.getClass().getSimpleName()));
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.valeo.jim.cli;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.valeo.jim.service.SyntheticDatasetGenerator;
+
+/** Commands for load testing, available only with app.datasetGeneratorEnabled=true. */
+@ConditionalOnProperty(prefix = "app", name = "dataset-generator-enabled", havingValue = "true")
+@AllArgsConstructor
+@ShellComponent
+public class DatasetCommands {
+
+    private final SyntheticDatasetGenerator datasetGenerator;
+
+    @ShellMethod(value = "Fill database with synthetic portfolios, instruments, operations and prices",
+            key = "generate-dataset")
+    public Object generateDataset(@ShellOption(defaultValue = "GEN", help = "Prefix of portfolio names and symbols")
+                                          String prefix,
+                                  @ShellOption(defaultValue = "10") int portfolios,
+                                  @ShellOption(defaultValue = "500") int instruments,
+                                  @ShellOption(defaultValue = "10000", help = "Operations of every portfolio")
+                                          int operations,
+                                  @ShellOption(defaultValue = "750", help = "Prices of every instrument") int prices,
+                                  @ShellOption(defaultValue = "1") long seed) {
+        try {
+            return datasetGenerator.generate(prefix, portfolios, instruments, operations, prices, seed).toString();
+        } catch (IllegalArgumentException e) {
+            return new CommandError(e);
+        }
+    }
+}
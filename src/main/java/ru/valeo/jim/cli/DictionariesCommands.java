@@ -6,6 +6,7 @@ import org.springframework.shell.standard.ShellMethod;
 import ru.valeo.jim.domain.Currency;
 import ru.valeo.jim.domain.InstrumentCategory;
 import ru.valeo.jim.service.DictionariesService;
+import ru.valeo.jim.service.ReferenceDataCache;
 
 import java.util.stream.Collectors;
 
@@ -14,6 +15,7 @@ import java.util.stream.Collectors;
 public class DictionariesCommands {
 
     private final DictionariesService dictionariesService;
+    private final ReferenceDataCache referenceDataCache;
 
     @ShellMethod(value = "Print all available currencies", key = "currencies")
     public String printCurrencies() {
@@ -60,4 +62,9 @@ public class DictionariesCommands {
         return dictionariesService.getInstrumentTypes().stream()
                 .collect(Collectors.joining(System.lineSeparator()));
     }
+
+    @ShellMethod(value = "Show currencies, categories and instruments cache statistics", key = "reference-cache-stats")
+    public String referenceCacheStats() {
+        return referenceDataCache.getStats();
+    }
 }
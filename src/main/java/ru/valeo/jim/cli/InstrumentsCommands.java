@@ -8,11 +8,15 @@ import ru.valeo.jim.domain.InstrumentType;
 import ru.valeo.jim.dto.BondDto;
 import ru.valeo.jim.dto.InstrumentDto;
 import ru.valeo.jim.dto.InstrumentPriceDto;
+import ru.valeo.jim.service.InstrumentPriceCache;
 import ru.valeo.jim.service.InstrumentsPriceService;
 import ru.valeo.jim.service.InstrumentsService;
 import ru.valeo.jim.service.util.DateTimeHelper;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.stream.Collectors;
 
 import static org.springframework.shell.standard.ShellOption.NULL;
@@ -24,6 +28,7 @@ public class InstrumentsCommands {
     private final InstrumentsService instrumentsService;
     private final InstrumentsPriceService instrumentsPriceService;
     private final DateTimeHelper dateTimeHelper;
+    private final InstrumentPriceCache instrumentPriceCache;
 
     @ShellMethod(value = "Print all available financial instruments", key = "instruments")
     public String printInstruments() {
@@ -33,7 +38,7 @@ public class InstrumentsCommands {
     }
 
     @ShellMethod(value = "Update share or create if not exists", key = "save-share")
-    public String saveShare(String symbol,
+    public Object saveShare(String symbol,
                                  String name,
                                  String currency,
                                  String category,
@@ -49,12 +54,12 @@ public class InstrumentsCommands {
 
             return instrumentsService.save(dto).toString();
         } catch (RuntimeException e) {
-            return e.getMessage();
+            return new CommandError(e);
         }
     }
 
     @ShellMethod(value = "Update ETF or create if not exists", key = "save-etf")
-    public String saveETF(String symbol,
+    public Object saveETF(String symbol,
                             String name,
                             String currency,
                             String category,
@@ -70,12 +75,12 @@ public class InstrumentsCommands {
 
             return instrumentsService.save(dto).toString();
         } catch (RuntimeException e) {
-            return e.getMessage();
+            return new CommandError(e);
         }
     }
 
     @ShellMethod(value = "Update bond or create if not exists", key = "save-bond")
-    public String saveBond(String symbol,
+    public Object saveBond(String symbol,
                          String name,
                          String currency,
                          String category,
@@ -92,12 +97,12 @@ public class InstrumentsCommands {
 
             return instrumentsService.save(dto).toString();
         } catch (RuntimeException e) {
-            return e.getMessage();
+            return new CommandError(e);
         }
     }
 
     @ShellMethod(value = "Update currency instrument or create if not exists", key = "save-currency-instrument")
-    public String saveCurrencyInstrument(String symbol,
+    public Object saveCurrencyInstrument(String symbol,
                            String name,
                            String currency,
                            String category) {
@@ -111,7 +116,7 @@ public class InstrumentsCommands {
 
             return instrumentsService.save(dto).toString();
         } catch (RuntimeException e) {
-            return e.getMessage();
+            return new CommandError(e);
         }
     }
 
@@ -139,9 +144,24 @@ public class InstrumentsCommands {
         return instrumentsPriceService.addPrice(dto).toString();
     }
 
+    @ShellMethod(value = "Import instrument prices from CSV file", key = "import-prices")
+    public Object importPrices(@ShellOption(help = "CSV file with lines: symbol,price,accumulatedCouponIncome,whenAdd") String file) {
+        try (var reader = Files.newBufferedReader(Path.of(file))) {
+            var result = instrumentsPriceService.importPrices(reader);
+            return result.getFailed() > 0 ? new CommandError(result.toString()) : result.toString();
+        } catch (IOException | RuntimeException e) {
+            return new CommandError(e);
+        }
+    }
+
     @ShellMethod(value = "Show price log by instrument", key = "price-log")
     public String priceLog(String symbol) {
         return instrumentsPriceService.get(symbol).stream().map(InstrumentPriceDto::toString)
                 .collect(Collectors.joining(System.lineSeparator()));
     }
+
+    @ShellMethod(value = "Show instrument price cache statistics", key = "price-cache-stats")
+    public String priceCacheStats() {
+        return instrumentPriceCache.getStats();
+    }
 }
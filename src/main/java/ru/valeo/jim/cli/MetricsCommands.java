@@ -0,0 +1,37 @@
+package ru.valeo.jim.cli;
+
+import lombok.AllArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.valeo.jim.dto.DbStatisticsDto;
+import ru.valeo.jim.service.DbStatisticsCollector;
+import ru.valeo.jim.service.MetricsReporter;
+
+import java.util.stream.Collectors;
+
+import static org.springframework.shell.standard.ShellOption.NULL;
+
+@AllArgsConstructor
+@ShellComponent
+public class MetricsCommands {
+
+    private final MetricsReporter metricsReporter;
+    private final DbStatisticsCollector dbStatisticsCollector;
+
+    @ShellMethod(value = "Show timers of commands and services, JVM and GC metrics, times are in ms", key = "metrics")
+    public String metrics(@ShellOption(defaultValue = NULL, help = "Metric name prefix, e.g. jim.command") String name) {
+        return metricsReporter.getReport(name);
+    }
+
+    @ShellMethod(value = "Show Hibernate statistics per command: statements, queries, loaded entities and collections, " +
+            "second-level cache hits", key = "db-stats")
+    public String dbStats(@ShellOption(help = "Clear statistics after printing") boolean reset) {
+        if (!dbStatisticsCollector.isEnabled()) {
+            return "Hibernate statistics are disabled, set spring.jpa.properties.hibernate.generate_statistics=true";
+        }
+        return dbStatisticsCollector.getStatistics(reset).stream()
+                .map(DbStatisticsDto::toString)
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
+}
@@ -1,13 +1,19 @@
 package ru.valeo.jim.cli;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import lombok.AllArgsConstructor;
+import org.jline.terminal.Terminal;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.OperationType;
+import ru.valeo.jim.dto.OperationsFilterDto;
 import ru.valeo.jim.dto.operation.AddMoneyDto;
 import ru.valeo.jim.dto.operation.BondRedemptionDto;
 import ru.valeo.jim.dto.operation.BuyBondDto;
@@ -23,31 +29,103 @@ import ru.valeo.jim.service.OperationsService;
 import ru.valeo.jim.service.PortfolioService;
 import ru.valeo.jim.service.util.DateTimeHelper;
 
+import static java.util.Optional.ofNullable;
 import static org.springframework.shell.standard.ShellOption.NULL;
 
 @AllArgsConstructor
 @ShellComponent
 public class OperationsCommands {
-    private static final String LOG_FIRST_LINE = "Processed operations (newest - top):";
+    private static final String LOG_FIRST_LINE = "Processed operations (newest - top, id. operation):";
 
     private final OperationsService operationsService;
     private final PortfolioService portfolioService;
     private final DateTimeHelper dateTimeHelper;
+    private final ApplicationConfig applicationConfig;
+    /** Terminal is created by shell after commands, so it's resolved on first use. */
+    private final ObjectProvider<Terminal> terminal;
 
+    /** Operations are written to terminal by pages, so only one page is in memory. */
     @ShellMethod(value = "Log processed operations", key = "log-operations")
-    public String logOperations(@ShellOption(defaultValue = NULL) String portfolioName) {
-        var builder = new StringBuilder(LOG_FIRST_LINE);
-        List<String> operations = portfolioService.getProcessedOperations(portfolioName)
-                .stream()
-                .map(dto -> dto.toString() + " on " + dateTimeHelper.ldtToString(dto.getWhenAdd()))
-                .collect(Collectors.toList());
-        for (var i = 0; i < operations.size(); i++) {
-            builder.append(System.lineSeparator());
-            builder.append(operations.size() - i);
-            builder.append(". ");
-            builder.append(operations.get(i));
+    public Object logOperations(@ShellOption(defaultValue = NULL) String portfolioName,
+                                @ShellOption(defaultValue = "0", help = "Max count of operations, 0 - all") int limit,
+                                @ShellOption(defaultValue = NULL, help = "Show operations older than operation with id")
+                                        Long after,
+                                @ShellOption(defaultValue = NULL, help = "Operation type, e.g. DIVIDEND") String type,
+                                @ShellOption(defaultValue = NULL, help = "Instrument symbol") String symbol,
+                                @ShellOption(defaultValue = NULL, help = "Added at or after date") String from,
+                                @ShellOption(defaultValue = NULL, help = "Added before date") String to) {
+        try {
+            var filter = OperationsFilterDto.builder()
+                    .type(ofNullable(type).map(t -> OperationType.valueOf(t.toUpperCase())).orElse(null))
+                    .symbol(symbol)
+                    .from(dateTimeHelper.parse(from))
+                    .to(dateTimeHelper.parse(to))
+                    .build();
+            var writer = terminal.getObject().writer();
+            var remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+            var page = portfolioService.getProcessedOperations(portfolioName, filter, after,
+                    Math.min(remaining, applicationConfig.getOperationsLogPageSize()));
+            writer.println(LOG_FIRST_LINE);
+            while (true) {
+                for (var dto : page.getOperations()) {
+                    writer.println(dto.getId() + ". " + dto + " on " + dateTimeHelper.ldtToString(dto.getWhenAdd()));
+                }
+                writer.flush();
+                remaining -= page.getOperations().size();
+                if (!page.hasNext() || remaining <= 0) {
+                    break;
+                }
+                page = portfolioService.getProcessedOperations(portfolioName, filter, page.getNextAfterId(),
+                        Math.min(remaining, applicationConfig.getOperationsLogPageSize()));
+            }
+            if (page.hasNext()) {
+                writer.println("Next: --after " + page.getNextAfterId());
+                writer.flush();
+            }
+            return null;
+        } catch (RuntimeException e) {
+            return new CommandError(e);
         }
-        return builder.toString();
+    }
+
+    @ShellMethod(value = "Import operations from broker report (CSV or JSON lines)", key = "import-operations")
+    public Object importOperations(@ShellOption(help = "File with JSON objects or CSV lines: " +
+                                           "type,symbol,amount,price,accumulatedCouponIncome,percent,whenAdd") String file,
+                                   @ShellOption(defaultValue = NULL) String portfolioName) {
+        try (var reader = Files.newBufferedReader(Path.of(file))) {
+            var result = operationsService.importOperations(portfolioName, reader);
+            return result.getFailed() > 0 ? new CommandError(result.toString()) : result.toString();
+        } catch (IOException | RuntimeException e) {
+            return new CommandError(e);
+        }
+    }
+
+    @ShellMethod(value = "Delete operation and reverse its effect on portfolio", key = "delete-operation")
+    public Object deleteOperation(Long id) {
+        try {
+            return operationsService.deleteOperation(id);
+        } catch (RuntimeException e) {
+            return new CommandError(e);
+        }
+    }
+
+    @ShellMethod(value = "Restore deleted operation and apply it to portfolio", key = "restore-operation")
+    public Object restoreOperation(Long id) {
+        try {
+            return operationsService.restoreOperation(id);
+        } catch (RuntimeException e) {
+            return new CommandError(e);
+        }
+    }
+
+    @ShellMethod(value = "Check accounting prices of positions by all operations", key = "check-accounting-prices")
+    public String checkAccountingPrices(@ShellOption(defaultValue = NULL) String portfolioName) {
+        var errors = operationsService.checkAccountingPrices(portfolioName);
+        if (errors.isEmpty()) {
+            return "All instrument positions are consistent with operations";
+        }
+        return "Inconsistent instrument positions:" + System.lineSeparator()
+                + String.join(System.lineSeparator(), errors);
     }
 
     @ShellMethod(value = "Add money operation", key = "add-money")
@@ -1,5 +1,7 @@
 package ru.valeo.jim.cli;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import lombok.AllArgsConstructor;
@@ -11,6 +13,7 @@ import ru.valeo.jim.dto.PortfolioDto;
 import ru.valeo.jim.service.PortfolioService;
 import ru.valeo.jim.service.util.DateTimeHelper;
 
+import static java.util.Objects.nonNull;
 import static java.util.Optional.ofNullable;
 import static org.springframework.shell.standard.ShellOption.NULL;
 
@@ -30,7 +33,7 @@ public class PortfoliosCommands {
     }
 
     @ShellMethod(value = "Update portfolio or create if not exists", key = "save-portfolio")
-    public String save(String name, String currency,
+    public Object save(String name, String currency,
                        @ShellOption(defaultValue = NULL, help = "Comma separated list: <Category code>-<percent>,...") String targetCategories) {
         try {
             var dto = new PortfolioDto();
@@ -40,7 +43,7 @@ public class PortfoliosCommands {
 
             return portfolioService.save(dto).toString();
         } catch (RuntimeException e) {
-            return e.getMessage();
+            return new CommandError(e);
         }
     }
 
@@ -53,12 +56,12 @@ public class PortfoliosCommands {
     }
 
     @ShellMethod(value = "Set default portfolio", key = "set-default-portfolio")
-    public String setDefault(String name) {
+    public Object setDefault(String name) {
         try {
             portfolioService.setDefault(name);
             return "Set default portfolio name: " + name;
         } catch (RuntimeException e) {
-            return e.getMessage();
+            return new CommandError(e);
         }
     }
 
@@ -71,25 +74,21 @@ public class PortfoliosCommands {
 
     @ShellMethod(value = "Get portfolio info", key = "portfolio-info")
     public String info(@ShellOption(defaultValue = NULL) String name,
-                       @ShellOption(defaultValue = NULL) String date) {
-        String portfolioInfo = ofNullable(name)
-                .flatMap(portfolioService::getPortfolio)
-                .map(PortfolioDto::toString)
-                .orElseGet(() -> portfolioService.getDefault()
-                            .map(PortfolioDto::toString)
-                        .orElseGet(() -> "Portfolio not found!"));
-        String instrumentPositions = portfolioService.getInstrumentPositions(name)
-                .stream()
-                .filter(instrumentPositionDto -> instrumentPositionDto.getAmount() > 0)
-                .map(InstrumentPositionDto::toString)
-                .collect(Collectors.joining(System.lineSeparator()));
+                       @ShellOption(defaultValue = NULL) String date,
+                       @ShellOption(help = "Show positions and money at date, not only prices") boolean asOf) {
+        var dateTime = dateTimeHelper.parse(date);
+        if (asOf && nonNull(dateTime)) {
+            return infoAt(name, dateTime);
+        }
+        var dashboard = portfolioService.getDashboard(name, dateTime);
+        String portfolioInfo = dashboard.getPortfolio().toString();
+        String instrumentPositions = formatPositions(dashboard.getPositions());
         String instrumentsDistributionByAccountingPrice = "Instruments distribution (accounting price):"
-                + System.lineSeparator() + portfolioService.getInstrumentsDistributionByAccoutingPrice(name).toString();
+                + System.lineSeparator() + dashboard.getDistributionByAccountingPrice().toString();
         String instrumentsDistributionByActualPrice = "Instruments distribution (actual price, accounting if not found):"
-                + System.lineSeparator() + portfolioService.getInstrumentsDistributionByActualPrice(name,
-                dateTimeHelper.parse(date)).toString();
+                + System.lineSeparator() + dashboard.getDistributionByActualPrice().toString();
         String targetInstrumentsDistribution = "Instruments distribution (target):"
-                + System.lineSeparator() + portfolioService.getTargetInstrumentsDistribution(name).toString();
+                + System.lineSeparator() + dashboard.getTargetDistribution().toString();
         return portfolioInfo + SEPARATOR
                 + targetInstrumentsDistribution + SEPARATOR
                 + instrumentsDistributionByAccountingPrice + SEPARATOR
@@ -108,12 +107,42 @@ public class PortfoliosCommands {
     }
 
     @ShellMethod(value = "Reinit portfolio. All data in portfolio will be deleted!!!", key = "reinit-portfolio")
-    public String reinit(String name) {
+    public Object reinit(String name) {
         try {
             portfolioService.reinit(name);
             return "Performed reinitilization on portfolio: " + name;
         } catch (RuntimeException e) {
-            return e.getMessage();
+            return new CommandError(e);
+        }
+    }
+
+    @ShellMethod(value = "Rebuild instrument positions and available money from operations", key = "rebuild-portfolio")
+    public Object rebuild(@ShellOption(defaultValue = NULL) String name,
+                          @ShellOption(help = "Rebuild all portfolios in parallel") boolean all) {
+        try {
+            var result = all ? portfolioService.rebuildAll() : portfolioService.rebuild(name);
+            return String.join(System.lineSeparator(), result);
+        } catch (RuntimeException e) {
+            return new CommandError(e);
+        }
+    }
+
+    @ShellMethod(value = "Create or replace snapshot of portfolio state at date", key = "create-portfolio-snapshot")
+    public Object createSnapshot(String date, @ShellOption(defaultValue = NULL) String name) {
+        try {
+            return portfolioService.createSnapshot(name, dateTimeHelper.parse(date));
+        } catch (RuntimeException e) {
+            return new CommandError(e);
+        }
+    }
+
+    @ShellMethod(value = "Create missing month end snapshots of portfolio state", key = "create-monthly-snapshots")
+    public Object createMonthlySnapshots(@ShellOption(defaultValue = NULL) String name) {
+        try {
+            var result = portfolioService.createMonthlySnapshots(name);
+            return result.isEmpty() ? "No new snapshots" : String.join(System.lineSeparator(), result);
+        } catch (RuntimeException e) {
+            return new CommandError(e);
         }
     }
 
@@ -123,4 +152,29 @@ public class PortfoliosCommands {
         portfolioService.toggleExcludeInstrumentFromDistribution(symbol, portfolioName);
         return "Toggle excluding instrument from distribution in portfolio";
     }
+
+    private String infoAt(String name, LocalDateTime date) {
+        String portfolioInfo = ofNullable(name)
+                .or(() -> portfolioService.getDefault().map(PortfolioDto::getName))
+                .flatMap(portfolioName -> portfolioService.getPortfolioAt(portfolioName, date))
+                .map(PortfolioDto::toString)
+                .orElse("Portfolio not found!");
+        String instrumentsDistributionByAccountingPrice = "Instruments distribution at " + date + " (accounting price):"
+                + System.lineSeparator()
+                + portfolioService.getInstrumentsDistributionByAccountingPriceAt(name, date).toString();
+        String instrumentsDistributionByActualPrice = "Instruments distribution at " + date
+                + " (actual price, accounting if not found):" + System.lineSeparator()
+                + portfolioService.getInstrumentsDistributionByActualPriceAt(name, date).toString();
+        return portfolioInfo + SEPARATOR
+                + instrumentsDistributionByAccountingPrice + SEPARATOR
+                + instrumentsDistributionByActualPrice + SEPARATOR
+                + formatPositions(portfolioService.getInstrumentPositionsAt(name, date));
+    }
+
+    private static String formatPositions(List<InstrumentPositionDto> positions) {
+        return positions.stream()
+                .filter(instrumentPositionDto -> instrumentPositionDto.getAmount() > 0)
+                .map(InstrumentPositionDto::toString)
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
 }
@@ -0,0 +1,30 @@
+package ru.valeo.jim.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import lombok.AllArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+@AllArgsConstructor
+@ShellComponent
+public class ScriptCommands {
+
+    private final ScriptRunner scriptRunner;
+
+    @ShellMethod(value = "Execute commands from file, commands are committed in batches, errors are reported by line",
+            key = "run-script")
+    public Object runScript(@ShellOption(help = "File with one command per line, # - comment") String file,
+                            @ShellOption(defaultValue = "0", help = "Commands in one transaction, 0 - app.scriptBatchSize")
+                                    int batchSize) {
+        try (var reader = Files.newBufferedReader(Path.of(file))) {
+            var result = scriptRunner.run(reader, batchSize);
+            return result.getFailed() > 0 ? new CommandError(result.toString()) : result.toString();
+        } catch (IOException | RuntimeException e) {
+            return new CommandError(e);
+        }
+    }
+}
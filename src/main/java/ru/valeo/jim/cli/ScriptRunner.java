@@ -0,0 +1,156 @@
+package ru.valeo.jim.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.constraints.NotNull;
+
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.jline.reader.Parser;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.lang.Nullable;
+import org.springframework.shell.Input;
+import org.springframework.shell.Shell;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.dto.ScriptResultDto;
+
+/** Executes shell commands from script, one command per line, lines starting with # are comments.
+ * Commands are grouped in batches of app.scriptBatchSize, batch is executed in one transaction.
+ * If command of batch fails, batch is rolled back and its commands are executed again one by one
+ * in own transactions, so failed commands are reported by line and other commands are applied.
+ * Operations join transaction of batch, locks of their portfolios are held until batch is completed.
+ * Commands managing transactions themselves are executed out of batch after previous commands are committed. */
+@RequiredArgsConstructor
+@Component
+public class ScriptRunner {
+    private static final String COMMENT_PREFIX = "#";
+    /** Commands with own transactions: rebuild replays portfolios in other threads, imports commit by parts. */
+    private static final Set<String> STANDALONE_COMMANDS = Set.of("rebuild-portfolio", "import-operations",
+            "import-prices", "generate-dataset", "run-script");
+
+    /** Shell and its parser are created after commands, so they are resolved on first script. */
+    private final ObjectProvider<Shell> shell;
+    private final ObjectProvider<Parser> parser;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationConfig applicationConfig;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** Execute commands from script.
+     * @param batchSize - count of commands in one transaction, if not positive - app.scriptBatchSize */
+    public ScriptResultDto run(@NotNull Reader source, int batchSize) {
+        var start = System.currentTimeMillis();
+        var size = batchSize > 0 ? batchSize : Math.max(1, applicationConfig.getScriptBatchSize());
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var result = new ScriptResultDto();
+        List<Line> batch = new ArrayList<>(size);
+        try (var reader = new BufferedReader(source)) {
+            long lineNumber = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                lineNumber++;
+                text = text.trim();
+                if (text.isEmpty() || text.startsWith(COMMENT_PREFIX)) {
+                    continue;
+                }
+                var line = new Line(lineNumber, text);
+                if (STANDALONE_COMMANDS.contains(line.getCommand())) {
+                    executeBatch(batch, transactionTemplate, result);
+                    batch.clear();
+                    executeStandalone(line, result);
+                    continue;
+                }
+                batch.add(line);
+                if (batch.size() >= size) {
+                    executeBatch(batch, transactionTemplate, result);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        executeBatch(batch, transactionTemplate, result);
+        result.setDurationMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void executeBatch(List<Line> batch, TransactionTemplate transactionTemplate, ScriptResultDto result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        result.setBatches(result.getBatches() + 1);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (var line : batch) {
+                    if (execute(line) != null || status.isRollbackOnly()) {
+                        throw new BatchFailedException();
+                    }
+                    // failed statements are found by command, persistence context doesn't grow with batch
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            });
+            result.setExecuted(result.getExecuted() + batch.size());
+        } catch (RuntimeException e) {
+            batch.forEach(line -> executeStandalone(line, result));
+        }
+    }
+
+    private void executeStandalone(Line line, ScriptResultDto result) {
+        var error = execute(line);
+        if (error == null) {
+            result.setExecuted(result.getExecuted() + 1);
+        } else {
+            result.addError(line.number, line.getCommand(), error.getMessage());
+        }
+    }
+
+    /** Execute command, shell returns exception as result of failed command,
+     * commands handling errors themselves return {@link CommandError}.
+     * @return error of command or null if command is executed */
+    @Nullable
+    private CommandError execute(Line line) {
+        var parsedLine = parser.getObject().parse(line.text, line.text.length());
+        var result = shell.getObject().evaluate(new Input() {
+            @Override
+            public String rawText() {
+                return parsedLine.line();
+            }
+
+            @Override
+            public List<String> words() {
+                return parsedLine.words();
+            }
+        });
+        if (result instanceof CommandError) {
+            return (CommandError) result;
+        }
+        return result instanceof Throwable ? new CommandError((Throwable) result) : null;
+    }
+
+    @AllArgsConstructor
+    private static class Line {
+        private final long number;
+        private final String text;
+
+        String getCommand() {
+            var end = text.indexOf(' ');
+            return end > 0 ? text.substring(0, end) : text;
+        }
+    }
+
+    /** Rolls back batch transaction, batch is executed again by command. */
+    private static class BatchFailedException extends RuntimeException {
+    }
+}
@@ -14,6 +14,36 @@ public class ApplicationConfig {
     private int bigdecimalOperationsScale = 3;
     private String operationWhenAddFormat = "yyyy-MM-dd HH:mm:ss";
     private String defaultDateFormat = "yyyy-MM-dd";
+    /** Max count of instruments with price history in memory, 0 - disable cache. */
+    private int priceCacheMaxInstruments = 500;
+    /** Cache currencies, instrument categories and instruments in memory. */
+    private boolean referenceDataCacheEnabled = true;
+    /** Count of rows inserted in one JDBC batch and transaction on import. */
+    private int importBatchSize = 1000;
+    /** Count of operations loaded at once for operations log. */
+    private int operationsLogPageSize = 100;
+    /** Count of locks for serializing changes of portfolios, portfolios are distributed by name hash. */
+    private int portfolioLockStripes = 64;
+    /** Count of retries of portfolio change on optimistic locking failure. */
+    private int optimisticLockRetries = 3;
+    /** Time to wait for lock of portfolio in transaction of caller, it can hold locks of other portfolios. */
+    private long portfolioLockTimeoutMillis = 10000;
+    /** Count of threads applying queued operations, each portfolio queue is drained by one thread at a time. */
+    private int ingestionWriters = 4;
+    /** Time to write queued operations on exit, operations left after it are failed. */
+    private long ingestionShutdownTimeoutMillis = 30000;
+    /** Count of portfolios rebuilt in parallel. */
+    private int rebuildParallelism = Runtime.getRuntime().availableProcessors();
+    /** Enable generate-dataset command, it fills database with synthetic data for load testing. */
+    private boolean datasetGeneratorEnabled = false;
+    /** File for metrics report written on exit, not written if not set. */
+    private String metricsDumpFile;
+    /** File of Java Flight Recorder recording started with jfr profile, it's written on exit. */
+    private String jfrRecordingFile = "jim.jfr";
+    /** JFR settings of recording: "default" with low overhead or "profile" with more details. */
+    private String jfrRecordingSettings = "profile";
+    /** Count of script commands executed in one transaction by run-script and --script. */
+    private int scriptBatchSize = 500;
 
     public DateTimeFormatter getOperationWhenAddFormatter() {
         return DateTimeFormatter.ofPattern(operationWhenAddFormat);
@@ -0,0 +1,38 @@
+package ru.valeo.jim.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import javax.annotation.PreDestroy;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/** Java Flight Recorder recording of application lifetime, enabled by jfr profile.
+ * Recording includes JIM events of operations processing and portfolio computations with portfolio context,
+ * it's written to app.jfrRecordingFile on exit. */
+@Profile("jfr")
+@Component
+public class JfrRecording {
+
+    private final Recording recording;
+
+    public JfrRecording(ApplicationConfig applicationConfig) throws IOException, ParseException {
+        recording = new Recording(Configuration.getConfiguration(applicationConfig.getJfrRecordingSettings()));
+        recording.setName("jim");
+        recording.setToDisk(true);
+        // written on JVM exit when context is not closed
+        recording.setDumpOnExit(true);
+        recording.setDestination(Path.of(applicationConfig.getJfrRecordingFile()));
+        recording.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        recording.stop();
+        recording.close();
+    }
+}
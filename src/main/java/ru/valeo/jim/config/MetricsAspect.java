@@ -0,0 +1,69 @@
+package ru.valeo.jim.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.stereotype.Component;
+import ru.valeo.jim.service.DbStatisticsCollector;
+
+/** Timers of public methods of services and of shell commands, tagged by exception thrown or "none".
+ * Timers publish percentiles and percentile histograms, so latency distribution is in metrics report.
+ * Hibernate statistics of shell commands are collected by {@link DbStatisticsCollector}. */
+@RequiredArgsConstructor
+@Aspect
+@Component
+public class MetricsAspect {
+
+    /** Timer of service methods, tagged by class and method. */
+    public static final String SERVICE_TIMER = "jim.service";
+    /** Timer of shell commands, tagged by command. */
+    public static final String COMMAND_TIMER = "jim.command";
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry meterRegistry;
+    private final DbStatisticsCollector dbStatisticsCollector;
+
+    @Around("execution(public * ru.valeo.jim.service.OperationsService+.*(..))" +
+            " || execution(public * ru.valeo.jim.service.PortfolioService+.*(..))" +
+            " || execution(public * ru.valeo.jim.service.InstrumentsPriceService+.*(..))" +
+            " || execution(public * ru.valeo.jim.service.PortfolioRebalanceHelper.rebalance(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        var signature = joinPoint.getSignature();
+        return time(joinPoint, SERVICE_TIMER,
+                Tags.of("class", signature.getDeclaringType().getSimpleName(), "method", signature.getName()));
+    }
+
+    @Around("@annotation(shellMethod)")
+    public Object timeCommand(ProceedingJoinPoint joinPoint, ShellMethod shellMethod) throws Throwable {
+        var command = shellMethod.key().length > 0 ? shellMethod.key()[0] : joinPoint.getSignature().getName();
+        var before = dbStatisticsCollector.snapshot();
+        try {
+            return time(joinPoint, COMMAND_TIMER, Tags.of("command", command));
+        } finally {
+            dbStatisticsCollector.record(command, before);
+        }
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String name, Tags tags) throws Throwable {
+        var sample = Timer.start(meterRegistry);
+        var exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(name)
+                    .tags(tags)
+                    .tag("exception", exception)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+}
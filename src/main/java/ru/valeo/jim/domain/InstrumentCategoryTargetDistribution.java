@@ -16,7 +16,8 @@ import java.math.BigDecimal;
 public class InstrumentCategoryTargetDistribution {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instrument_category_target_distribution_seq")
+    @SequenceGenerator(name = "instrument_category_target_distribution_seq", sequenceName = "instrument_category_target_distribution_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
@@ -9,8 +9,10 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 import javax.validation.constraints.Min;
 
 import lombok.Data;
@@ -25,10 +27,15 @@ import lombok.experimental.Accessors;
 public class InstrumentPosition {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instrument_position_seq")
+    @SequenceGenerator(name = "instrument_position_seq", sequenceName = "instrument_position_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @ManyToOne(optional = false)
     @JoinColumn(name = "portfolio_id", nullable = false)
     private Portfolio portfolio;
@@ -47,4 +54,14 @@ public class InstrumentPosition {
 
     @Column(name = "exclude_from_distribution", nullable = false)
     private Boolean excludeFromDistribution = false;
+
+    /** Sum of total prices of processed buy operations. */
+    @Min(0)
+    @Column(name = "buy_total_price", nullable = false)
+    private BigDecimal buyTotalPrice = BigDecimal.ZERO;
+
+    /** Sum of total prices of processed sell operations. */
+    @Min(0)
+    @Column(name = "sell_total_price", nullable = false)
+    private BigDecimal sellTotalPrice = BigDecimal.ZERO;
 }
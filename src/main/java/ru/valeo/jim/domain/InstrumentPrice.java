@@ -16,7 +16,8 @@ import java.time.LocalDateTime;
 public class InstrumentPrice {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instrument_price_seq")
+    @SequenceGenerator(name = "instrument_price_seq", sequenceName = "instrument_price_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
@@ -0,0 +1,147 @@
+package ru.valeo.jim.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static java.util.Objects.nonNull;
+
+/** Fixed-point arithmetic for hot aggregation loops: values are kept in long scaled by 10^scale.
+ * Results are equal (including scale) to the same calculation with BigDecimal and RoundingMode.FLOOR.
+ * Values with more fraction digits than scale or out of long range fall back to BigDecimal. */
+public final class Money {
+
+    /** Marker of value, which can't be represented as long with scale. */
+    static final long NOT_EXACT = Long.MIN_VALUE;
+    /** Max count of digits which always fits long. */
+    static final int MAX_DIGITS = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private Money() {
+    }
+
+    /** Same as dividend.divide(BigDecimal.valueOf(divisor), scale, RoundingMode.FLOOR). */
+    public static BigDecimal divideFloor(BigDecimal dividend, long divisor, int scale) {
+        var unscaled = toUnscaled(dividend, scale);
+        if (unscaled == NOT_EXACT || divisor == 0) {
+            return dividend.divide(BigDecimal.valueOf(divisor), scale, RoundingMode.FLOOR);
+        }
+        return BigDecimal.valueOf(Math.floorDiv(unscaled, divisor), scale);
+    }
+
+    /** Get value * 10^scale or NOT_EXACT if value has more fraction digits than scale or doesn't fit long. */
+    static long toUnscaled(BigDecimal value, int scale) {
+        if (scale < 0 || scale > MAX_DIGITS) {
+            return NOT_EXACT;
+        }
+        if (value.signum() == 0) {
+            return 0;
+        }
+        if (value.scale() > scale) {
+            value = value.stripTrailingZeros();
+            if (value.scale() > scale) {
+                return NOT_EXACT;
+            }
+        }
+        if (value.precision() - value.scale() + scale > MAX_DIGITS) {
+            return NOT_EXACT;
+        }
+        return value.movePointRight(scale).longValue();
+    }
+
+    /** Get a * b or NOT_EXACT on overflow. */
+    static long multiply(long a, long b) {
+        var result = a * b;
+        if (a == NOT_EXACT || b == NOT_EXACT || result == NOT_EXACT || Math.multiplyHigh(a, b) != (result >> 63)) {
+            return NOT_EXACT;
+        }
+        return result;
+    }
+
+    /** Get a + b or NOT_EXACT on overflow. */
+    static long add(long a, long b) {
+        var result = a + b;
+        if (a == NOT_EXACT || b == NOT_EXACT || result == NOT_EXACT || ((a ^ result) & (b ^ result)) < 0) {
+            return NOT_EXACT;
+        }
+        return result;
+    }
+
+    /** Mutable sum of products of prices and amounts. */
+    public static final class Sum {
+        private final int scale;
+        private long unscaled;
+        /** Max scale of added values, scale of the same sum calculated with BigDecimal. */
+        private int valueScale;
+        /** Exact value after fallback, null while sum fits long. */
+        private BigDecimal value;
+
+        public Sum(int scale) {
+            this.scale = scale;
+        }
+
+        /** Add price * amount. */
+        public Sum addProduct(BigDecimal price, long amount) {
+            if (fitsLong()) {
+                var sum = Money.add(unscaled, multiply(toUnscaled(price, scale), amount));
+                if (sum != NOT_EXACT) {
+                    unscaled = sum;
+                    valueScale = Math.max(valueScale, price.scale());
+                    return this;
+                }
+                value = toBigDecimal();
+            }
+            value = value.add(price.multiply(BigDecimal.valueOf(amount)));
+            return this;
+        }
+
+        public Sum add(Sum other) {
+            if (fitsLong() && other.fitsLong() && scale == other.scale) {
+                var sum = Money.add(unscaled, other.unscaled);
+                if (sum != NOT_EXACT) {
+                    unscaled = sum;
+                    valueScale = Math.max(valueScale, other.valueScale);
+                    return this;
+                }
+            }
+            value = toBigDecimal().add(other.toBigDecimal());
+            return this;
+        }
+
+        /** Get sum with the same value and scale as sum of added values calculated with BigDecimal. */
+        public BigDecimal toBigDecimal() {
+            if (nonNull(value)) {
+                return value;
+            }
+            if (valueScale < scale) {
+                // exact, because all added values have no more than valueScale fraction digits
+                return BigDecimal.valueOf(unscaled / POWERS_OF_TEN[scale - valueScale], valueScale);
+            }
+            return BigDecimal.valueOf(unscaled, scale).setScale(valueScale, RoundingMode.UNNECESSARY);
+        }
+
+        /** Same as toBigDecimal().divide(total.toBigDecimal(), percentScale, RoundingMode.FLOOR).multiply(100). */
+        public BigDecimal percentOf(Sum total, int percentScale) {
+            if (fitsLong() && total.fitsLong() && scale == total.scale && total.unscaled != 0
+                    && percentScale >= 0 && percentScale <= MAX_DIGITS) {
+                var scaled = multiply(unscaled, POWERS_OF_TEN[percentScale]);
+                var percent = scaled == NOT_EXACT ? NOT_EXACT : multiply(Math.floorDiv(scaled, total.unscaled), 100);
+                if (percent != NOT_EXACT) {
+                    return BigDecimal.valueOf(percent, percentScale);
+                }
+            }
+            return toBigDecimal().divide(total.toBigDecimal(), percentScale, RoundingMode.FLOOR)
+                    .multiply(BigDecimal.valueOf(100L));
+        }
+
+        private boolean fitsLong() {
+            return value == null;
+        }
+    }
+}
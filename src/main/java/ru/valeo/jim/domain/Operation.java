@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 public class Operation {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "operation_seq")
+    @SequenceGenerator(name = "operation_seq", sequenceName = "operation_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
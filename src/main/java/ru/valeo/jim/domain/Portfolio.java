@@ -1,11 +1,18 @@
 package ru.valeo.jim.domain;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.experimental.Accessors;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.Objects.isNull;
 
 @Accessors(chain = true)
 @Data
@@ -21,6 +28,11 @@ public class Portfolio {
     @JoinColumn(name = "currency_id", nullable = false)
     private Currency currency;
 
+    /** Version for optimistic locking, null for new portfolio. */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @Column(name = "available_money")
     private BigDecimal availableMoney = BigDecimal.ZERO;
 
@@ -32,4 +44,50 @@ public class Portfolio {
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "portfolio")
     private List<InstrumentCategoryTargetDistribution> categoryTargetDistributions;
+
+    /** Index of positions by instrument symbol, built on first search. */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Transient
+    private Map<String, InstrumentPosition> positionsBySymbol;
+
+    public Portfolio setPositions(List<InstrumentPosition> positions) {
+        this.positions = positions;
+        this.positionsBySymbol = null;
+        return this;
+    }
+
+    /** Find position by instrument symbol. */
+    public Optional<InstrumentPosition> findPosition(String symbol) {
+        return Optional.ofNullable(getPositionsBySymbol().get(symbol));
+    }
+
+    /** Add new position, it should be used instead of adding to positions list. */
+    public void addPosition(InstrumentPosition position) {
+        positions.add(position);
+        getPositionsBySymbol().put(position.getInstrument().getSymbol(), position);
+    }
+
+    /** Remove position, it should be used instead of removing from positions list to keep index by symbol in sync. */
+    public void removePosition(InstrumentPosition position) {
+        positions.remove(position);
+        getPositionsBySymbol().remove(position.getInstrument().getSymbol());
+    }
+
+    /** Remove all positions. */
+    public void clearPositions() {
+        positions.clear();
+        positionsBySymbol = null;
+    }
+
+    private Map<String, InstrumentPosition> getPositionsBySymbol() {
+        // rebuild if positions were changed not with methods of this class
+        if (isNull(positionsBySymbol) || positionsBySymbol.size() != positions.size()) {
+            positionsBySymbol = new HashMap<>();
+            for (var position : positions) {
+                positionsBySymbol.put(position.getInstrument().getSymbol(), position);
+            }
+        }
+        return positionsBySymbol;
+    }
 }
@@ -0,0 +1,54 @@
+package ru.valeo.jim.domain;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+/** State of portfolio (available money and positions) after all operations at or before snapshot date. */
+@Accessors(chain = true)
+@Data
+@Table(name = "portfolio_snapshot",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"portfolio_id", "snapshot_date"}))
+@Entity
+public class PortfolioSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "portfolio_snapshot_seq")
+    @SequenceGenerator(name = "portfolio_snapshot_seq", sequenceName = "portfolio_snapshot_seq", allocationSize = 50)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "portfolio_id", nullable = false)
+    private Portfolio portfolio;
+
+    @Column(name = "snapshot_date", nullable = false)
+    private LocalDateTime snapshotDate;
+
+    @Column(name = "available_money", nullable = false)
+    private BigDecimal availableMoney = BigDecimal.ZERO;
+
+    @OneToMany(cascade = CascadeType.ALL, mappedBy = "snapshot", orphanRemoval = true)
+    private List<PortfolioSnapshotPosition> positions = new ArrayList<>();
+}
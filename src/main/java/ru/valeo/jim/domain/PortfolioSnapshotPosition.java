@@ -0,0 +1,59 @@
+package ru.valeo.jim.domain;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.validation.constraints.Min;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+/** Instrument position stored in portfolio snapshot. */
+@Accessors(chain = true)
+@Data
+@Table(name = "portfolio_snapshot_position")
+@Entity
+public class PortfolioSnapshotPosition {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "portfolio_snapshot_position_seq")
+    @SequenceGenerator(name = "portfolio_snapshot_position_seq", sequenceName = "portfolio_snapshot_position_seq", allocationSize = 50)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "snapshot_id", nullable = false)
+    private PortfolioSnapshot snapshot;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "instrument_id", nullable = false)
+    private Instrument instrument;
+
+    @Min(0)
+    @Column(name = "amount", nullable = false)
+    private Integer amount = 0;
+
+    @Min(0)
+    @Column(name = "accounting_price", nullable = false)
+    private BigDecimal accountingPrice;
+
+    @Min(0)
+    @Column(name = "buy_total_price", nullable = false)
+    private BigDecimal buyTotalPrice = BigDecimal.ZERO;
+
+    @Min(0)
+    @Column(name = "sell_total_price", nullable = false)
+    private BigDecimal sellTotalPrice = BigDecimal.ZERO;
+}
@@ -0,0 +1,50 @@
+package ru.valeo.jim.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** Hibernate statistics summed over invocations of shell command. */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+public class DbStatisticsDto {
+    private String command;
+    private long invocations;
+    /** SQL statements prepared, including inserts and updates. */
+    private long statements;
+    /** HQL, criteria and native queries executed. */
+    private long queries;
+    private long entitiesLoaded;
+    private long collectionsLoaded;
+    /** Collections loaded lazily on first access, usually they should be fetched by query. */
+    private long collectionsFetched;
+    private long secondLevelCacheHits;
+    private long secondLevelCacheMisses;
+
+    public void add(DbStatisticsDto other) {
+        invocations += other.invocations;
+        statements += other.statements;
+        queries += other.queries;
+        entitiesLoaded += other.entitiesLoaded;
+        collectionsLoaded += other.collectionsLoaded;
+        collectionsFetched += other.collectionsFetched;
+        secondLevelCacheHits += other.secondLevelCacheHits;
+        secondLevelCacheMisses += other.secondLevelCacheMisses;
+    }
+
+    @Override
+    public String toString() {
+        return command +
+                ": invocations " + invocations +
+                ", statements " + statements +
+                ", queries " + queries +
+                ", entities loaded " + entitiesLoaded +
+                ", collections loaded " + collectionsLoaded +
+                ", collections fetched " + collectionsFetched +
+                ", L2 cache hits " + secondLevelCacheHits +
+                ", L2 cache misses " + secondLevelCacheMisses;
+    }
+}
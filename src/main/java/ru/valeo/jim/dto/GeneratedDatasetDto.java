@@ -0,0 +1,30 @@
+package ru.valeo.jim.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** Counts of rows inserted by synthetic dataset generator. */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+public class GeneratedDatasetDto {
+    private long portfolios;
+    private long instruments;
+    private long operations;
+    private long positions;
+    private long prices;
+    private long durationMillis;
+
+    @Override
+    public String toString() {
+        return "Generated portfolios: " + portfolios +
+                ", instruments: " + instruments +
+                ", operations: " + operations +
+                ", positions: " + positions +
+                ", prices: " + prices +
+                ", duration: " + durationMillis + " ms";
+    }
+}
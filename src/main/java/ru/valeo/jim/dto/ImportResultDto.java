@@ -0,0 +1,59 @@
+package ru.valeo.jim.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Result of bulk import from file. */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+public class ImportResultDto {
+    /** Max count of stored error messages. */
+    public static final int MAX_ERRORS = 100;
+
+    private long imported;
+    private long failed;
+    private long durationMillis;
+    private List<String> errors = new ArrayList<>();
+
+    public void addError(long lineNumber, String message) {
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("line " + lineNumber + ": " + message);
+        }
+    }
+
+    /** Add error of chunk rolled back as a whole, all rows of chunk are failed. */
+    public void addChunkError(long firstLineNumber, long lastLineNumber, long rows, String message) {
+        failed += rows;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("lines " + firstLineNumber + "-" + lastLineNumber + ": " + rows +
+                    " rows are not imported, imported before: " + imported + ", " + message);
+        }
+    }
+
+    public long getRowsPerSecond() {
+        return durationMillis > 0 ? imported * 1000 / durationMillis : imported;
+    }
+
+    @Override
+    public String toString() {
+        var result = "Imported: " + imported +
+                ", failed: " + failed +
+                ", duration: " + durationMillis + " ms" +
+                ", rows per second: " + getRowsPerSecond();
+        if (!errors.isEmpty()) {
+            result += System.lineSeparator() + String.join(System.lineSeparator(), errors);
+            if (failed > errors.size()) {
+                result += System.lineSeparator() + "... and " + (failed - errors.size()) + " more errors";
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package ru.valeo.jim.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.lang.Nullable;
+import ru.valeo.jim.domain.OperationType;
+
+import java.time.LocalDateTime;
+
+/** Filter of operations log, null fields are not used. */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OperationsFilterDto {
+    @Nullable private OperationType type;
+    @Nullable private String symbol;
+    /** Inclusive. */
+    @Nullable private LocalDateTime from;
+    /** Exclusive. */
+    @Nullable private LocalDateTime to;
+
+    @Override
+    public String toString() {
+        return "type=" + type + ", symbol=" + symbol + ", from=" + from + ", to=" + to;
+    }
+}
@@ -0,0 +1,29 @@
+package ru.valeo.jim.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.lang.Nullable;
+import ru.valeo.jim.dto.operation.OperationDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.nonNull;
+
+/** Page of operations log, newest first. */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+public class OperationsPageDto {
+    private List<OperationDto> operations = new ArrayList<>();
+    /** Id of last operation on page if there are older operations, use it to get next page. */
+    @Nullable
+    private Long nextAfterId;
+
+    public boolean hasNext() {
+        return nonNull(nextAfterId);
+    }
+}
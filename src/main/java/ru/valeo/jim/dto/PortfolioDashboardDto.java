@@ -0,0 +1,52 @@
+package ru.valeo.jim.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.Portfolio;
+
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Optional.ofNullable;
+
+/** Portfolio with its positions and all instruments distributions, built from one load of portfolio. */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+public class PortfolioDashboardDto {
+    private PortfolioDto portfolio;
+    private List<InstrumentPositionDto> positions = new ArrayList<>();
+    private PortfolioInstrumentsDistributionDto targetDistribution;
+    private PortfolioInstrumentsDistributionDto distributionByAccountingPrice;
+    private PortfolioInstrumentsDistributionDto distributionByActualPrice;
+
+    /** Positions and both distributions by prices are calculated in one pass over portfolio positions.
+     * @param actualPrices - key - instrument, value - actual price, accounting price is used if absent */
+    public static PortfolioDashboardDto from(@NotNull Portfolio portfolio,
+                                             @NotNull Map<Instrument, BigDecimal> actualPrices,
+                                             int bigdecimalOperationsScale) {
+        var dto = new PortfolioDashboardDto();
+        dto.setPortfolio(PortfolioDto.fromPortfolio(portfolio));
+        dto.setTargetDistribution(PortfolioInstrumentsDistributionDto.byTargetPercent(portfolio));
+        dto.setDistributionByAccountingPrice(new PortfolioInstrumentsDistributionDto(bigdecimalOperationsScale));
+        dto.setDistributionByActualPrice(new PortfolioInstrumentsDistributionDto(bigdecimalOperationsScale));
+        for (var position : portfolio.getPositions()) {
+            dto.getPositions().add(InstrumentPositionDto.from(position));
+            if (!position.getExcludeFromDistribution()) {
+                dto.getDistributionByAccountingPrice().addPosition(position, position.getAccountingPrice());
+                dto.getDistributionByActualPrice().addPosition(position,
+                        ofNullable(actualPrices.get(position.getInstrument())).orElse(position.getAccountingPrice()));
+            }
+        }
+        dto.getDistributionByAccountingPrice().calcPercents();
+        dto.getDistributionByActualPrice().calcPercents();
+        return dto;
+    }
+}
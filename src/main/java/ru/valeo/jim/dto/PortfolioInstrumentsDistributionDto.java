@@ -1,5 +1,6 @@
 package ru.valeo.jim.dto;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -9,7 +10,6 @@ import ru.valeo.jim.domain.*;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -28,6 +28,25 @@ public class PortfolioInstrumentsDistributionDto {
     @NotBlank
     private String portfolioName;
     private Map<InstrumentCategory, BigDecimal> percentByCategory = new HashMap<>();
+    /** Values of added positions by categories and their sum, kept as fixed-point until percents calculation. */
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<InstrumentCategory, Money.Sum> sumByCategory = new HashMap<>();
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Money.Sum sum;
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int bigdecimalOperationsScale;
+
+    /** Create empty distribution for adding positions. */
+    public PortfolioInstrumentsDistributionDto(int bigdecimalOperationsScale) {
+        this.bigdecimalOperationsScale = bigdecimalOperationsScale;
+        this.sum = new Money.Sum(bigdecimalOperationsScale);
+    }
 
     public static PortfolioInstrumentsDistributionDto byAccountingPrice(@NotNull List<InstrumentPosition> instrumentPositions,
                                                                         int bigdecimalOperationsScale) {
@@ -37,28 +56,13 @@ public class PortfolioInstrumentsDistributionDto {
     public static PortfolioInstrumentsDistributionDto byActualPrice(@NotNull List<InstrumentPosition> instrumentPositions,
                                                                     @NotNull Map<Instrument, BigDecimal> actualPrices,
                                                                     int bigdecimalOperationsScale) {
-        var dto = new PortfolioInstrumentsDistributionDto();
-        var sum = BigDecimal.ZERO;
+        var dto = new PortfolioInstrumentsDistributionDto(bigdecimalOperationsScale);
         for (var position: instrumentPositions) {
             var instrumentPrice = ofNullable(actualPrices.get(position.getInstrument()))
                     .orElse(position.getAccountingPrice());
-            var positionPrice = instrumentPrice.multiply(BigDecimal.valueOf(position.getAmount()));
-            sum = sum.add(positionPrice);
-            dto.getPercentByCategory().compute(position.getInstrument().getCategory(), (k,v) -> {
-                if (isNull(v)) {
-                    return positionPrice;
-                } else {
-                    return v.add(positionPrice);
-                }
-            });
-            if (isNull(dto.getPortfolioName())) {
-                dto.setPortfolioName(position.getPortfolio().getName());
-            }
-        }
-        // calc percents
-        for (var entry : dto.getPercentByCategory().entrySet()) {
-            entry.setValue(entry.getValue().divide(sum, bigdecimalOperationsScale, RoundingMode.FLOOR).multiply(BigDecimal.valueOf(100L)));
+            dto.addPosition(position, instrumentPrice);
         }
+        dto.calcPercents();
         return dto;
     }
 
@@ -73,6 +77,24 @@ public class PortfolioInstrumentsDistributionDto {
         return dto;
     }
 
+    /** Add value of position by price to its category, call {@link #calcPercents()} after all positions.
+     * Distribution must be created with scale. */
+    public void addPosition(@NotNull InstrumentPosition position, @NotNull BigDecimal instrumentPrice) {
+        sumByCategory.computeIfAbsent(position.getInstrument().getCategory(),
+                category -> new Money.Sum(bigdecimalOperationsScale))
+                .addProduct(instrumentPrice, position.getAmount());
+        sum.addProduct(instrumentPrice, position.getAmount());
+        if (isNull(portfolioName)) {
+            portfolioName = position.getPortfolio().getName();
+        }
+    }
+
+    /** Set percents of categories in sum of all added positions. */
+    public void calcPercents() {
+        sumByCategory.forEach((category, categorySum) ->
+                percentByCategory.put(category, categorySum.percentOf(sum, bigdecimalOperationsScale)));
+    }
+
     @Override
     public String toString() {
         return getPercentByCategory().entrySet().stream()
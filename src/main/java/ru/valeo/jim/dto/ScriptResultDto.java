@@ -0,0 +1,52 @@
+package ru.valeo.jim.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Result of executing commands from script file. */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+public class ScriptResultDto {
+    /** Max count of stored error messages. */
+    public static final int MAX_ERRORS = 100;
+
+    private long executed;
+    private long failed;
+    private long batches;
+    private long durationMillis;
+    private List<String> errors = new ArrayList<>();
+
+    public void addError(long lineNumber, String command, String message) {
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("line " + lineNumber + " (" + command + "): " + message);
+        }
+    }
+
+    public long getCommandsPerSecond() {
+        return durationMillis > 0 ? executed * 1000 / durationMillis : executed;
+    }
+
+    @Override
+    public String toString() {
+        var result = "Executed commands: " + executed +
+                ", failed: " + failed +
+                ", batches: " + batches +
+                ", duration: " + durationMillis + " ms" +
+                ", commands per second: " + getCommandsPerSecond();
+        if (!errors.isEmpty()) {
+            result += System.lineSeparator() + String.join(System.lineSeparator(), errors);
+            if (failed > errors.size()) {
+                result += System.lineSeparator() + "... and " + (failed - errors.size()) + " more errors";
+            }
+        }
+        return result;
+    }
+}
@@ -1,6 +1,5 @@
 package ru.valeo.jim.dto.operation;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -8,10 +7,16 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @NoArgsConstructor
-@AllArgsConstructor
 @Getter
 @Setter
 public abstract class OperationDto {
+    /** Id of stored operation, null for new operations. */
+    Long id;
     String portfolioName;
     LocalDateTime whenAdd;
+
+    protected OperationDto(String portfolioName, LocalDateTime whenAdd) {
+        this.portfolioName = portfolioName;
+        this.whenAdd = whenAdd;
+    }
 }
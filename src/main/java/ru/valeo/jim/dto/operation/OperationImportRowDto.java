@@ -0,0 +1,17 @@
+package ru.valeo.jim.dto.operation;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/** Row of broker report for import operations. */
+@Data
+public class OperationImportRowDto {
+    private String type;
+    private String symbol;
+    private Integer amount;
+    private BigDecimal price;
+    private BigDecimal accumulatedCouponIncome;
+    private BigDecimal percent;
+    private String whenAdd;
+}
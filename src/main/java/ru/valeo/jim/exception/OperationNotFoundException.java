@@ -0,0 +1,8 @@
+package ru.valeo.jim.exception;
+
+public class OperationNotFoundException extends RuntimeException {
+
+    public OperationNotFoundException(Long id) {
+        super("Not found operation with id: " + id);
+    }
+}
@@ -1,15 +1,23 @@
 package ru.valeo.jim.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.valeo.jim.domain.Instrument;
 import ru.valeo.jim.domain.InstrumentPrice;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface InstrumentPriceRepository extends JpaRepository<InstrumentPrice, Long> {
 
     List<InstrumentPrice> findByInstrument(Instrument instrument);
 
-    List<InstrumentPrice> findByWhenAddLessThanEqualOrderByWhenAddDesc(LocalDateTime whenAdd);
+    /** Get latest price (at or before whenAdd) for each of instruments.
+     * If several prices have the same latest whenAdd - all of them will be returned. */
+    @Query("select p from InstrumentPrice p where p.instrument in :instruments and p.whenAdd = " +
+            "(select max(l.whenAdd) from InstrumentPrice l where l.instrument = p.instrument and l.whenAdd <= :whenAdd)")
+    List<InstrumentPrice> findLatestByInstruments(@Param("instruments") Collection<Instrument> instruments,
+                                                  @Param("whenAdd") LocalDateTime whenAdd);
 }
@@ -1,7 +1,24 @@
 package ru.valeo.jim.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.valeo.jim.domain.Instrument;
 import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.domain.Portfolio;
 
-public interface OperationRepository extends JpaRepository<Operation, Long> {
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface OperationRepository extends JpaRepository<Operation, Long>, OperationRepositoryCustom {
+
+    @Query("select o.portfolio.name from Operation o where o.id = :id")
+    Optional<String> findPortfolioNameById(@Param("id") Long id);
+
+    /** Check if not deleted conversion of instrument follows operation in order of replay (when_add, id). */
+    @Query("select count(o) > 0 from Operation o where o.portfolio = :portfolio and o.instrument = :instrument " +
+            "and o.type = ru.valeo.jim.domain.OperationType.INSTRUMENT_CONVERSION and o.deleted = false " +
+            "and (o.whenAdd > :whenAdd or (o.whenAdd = :whenAdd and o.id > :id))")
+    boolean existsConversionAfter(@Param("portfolio") Portfolio portfolio, @Param("instrument") Instrument instrument,
+                                  @Param("whenAdd") LocalDateTime whenAdd, @Param("id") Long id);
 }
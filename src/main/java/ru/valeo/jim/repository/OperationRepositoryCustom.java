@@ -0,0 +1,17 @@
+package ru.valeo.jim.repository;
+
+import org.springframework.lang.Nullable;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.dto.OperationsFilterDto;
+
+import java.util.List;
+
+public interface OperationRepositoryCustom {
+
+    /** Get processed operations of portfolio matching filter, ordered by whenAdd and id descending.
+     * Only conditions of not null filter fields are added to query, so indexes on them can be used.
+     * @param after - if not null, only operations older than it are returned (keyset pagination)
+     * @param limit - max count of operations, 0 - without limit */
+    List<Operation> findProcessed(String portfolioName, @Nullable OperationsFilterDto filter,
+                                  @Nullable Operation after, int limit);
+}
@@ -0,0 +1,62 @@
+package ru.valeo.jim.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.lang.Nullable;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.dto.OperationsFilterDto;
+
+import static java.util.Objects.nonNull;
+
+public class OperationRepositoryCustomImpl implements OperationRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Operation> findProcessed(String portfolioName, @Nullable OperationsFilterDto filter,
+                                         @Nullable Operation after, int limit) {
+        // eager associations are fetched by the same statement, otherwise they are loaded by select for each entity
+        var jpql = new StringBuilder("select o from Operation o join fetch o.portfolio p join fetch p.currency " +
+                "left join fetch o.instrument i left join fetch i.baseCurrency left join fetch i.category " +
+                "where o.portfolio.name = :portfolioName and o.processed = true and o.deleted = false");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("portfolioName", portfolioName);
+        if (nonNull(filter)) {
+            if (nonNull(filter.getType())) {
+                jpql.append(" and o.type = :type");
+                parameters.put("type", filter.getType());
+            }
+            if (nonNull(filter.getSymbol())) {
+                jpql.append(" and o.instrument.symbol = :symbol");
+                parameters.put("symbol", filter.getSymbol());
+            }
+            if (nonNull(filter.getFrom())) {
+                jpql.append(" and o.whenAdd >= :from");
+                parameters.put("from", filter.getFrom());
+            }
+            if (nonNull(filter.getTo())) {
+                jpql.append(" and o.whenAdd < :to");
+                parameters.put("to", filter.getTo());
+            }
+        }
+        if (nonNull(after)) {
+            jpql.append(" and (o.whenAdd < :afterWhenAdd or (o.whenAdd = :afterWhenAdd and o.id < :afterId))");
+            parameters.put("afterWhenAdd", after.getWhenAdd());
+            parameters.put("afterId", after.getId());
+        }
+        jpql.append(" order by o.whenAdd desc, o.id desc");
+
+        var query = entityManager.createQuery(jpql.toString(), Operation.class);
+        parameters.forEach(query::setParameter);
+        if (limit > 0) {
+            query.setMaxResults(limit);
+        }
+        return query.getResultList();
+    }
+}
@@ -1,7 +1,20 @@
 package ru.valeo.jim.repository;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import ru.valeo.jim.domain.Portfolio;
 
+import java.util.Optional;
+
 public interface PortfolioRepository extends JpaRepository<Portfolio, String> {
+
+    /** Get portfolio with positions and their instruments, categories and currencies in one query. */
+    @EntityGraph(attributePaths = {"currency", "positions", "positions.instrument",
+            "positions.instrument.baseCurrency", "positions.instrument.category"})
+    Optional<Portfolio> findWithPositionsByName(String name);
+
+    /** Get portfolio with target distribution by categories in one query. */
+    @EntityGraph(attributePaths = {"currency", "categoryTargetDistributions",
+            "categoryTargetDistributions.category"})
+    Optional<Portfolio> findWithTargetDistributionsByName(String name);
 }
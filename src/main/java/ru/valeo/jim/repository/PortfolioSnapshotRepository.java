@@ -0,0 +1,32 @@
+package ru.valeo.jim.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.domain.PortfolioSnapshot;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface PortfolioSnapshotRepository extends JpaRepository<PortfolioSnapshot, Long> {
+
+    /** Get nearest snapshot at or before date. */
+    Optional<PortfolioSnapshot> findFirstByPortfolioAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(
+            Portfolio portfolio, LocalDateTime date);
+
+    Optional<PortfolioSnapshot> findByPortfolioAndSnapshotDate(Portfolio portfolio, LocalDateTime date);
+
+    List<PortfolioSnapshot> findByPortfolioOrderBySnapshotDate(Portfolio portfolio);
+
+    /** Delete snapshots which become stale after adding operation at date, positions are deleted by foreign key. */
+    @Modifying
+    @Query("delete from PortfolioSnapshot s where s.portfolio = :portfolio and s.snapshotDate >= :date")
+    int deleteFromDate(@Param("portfolio") Portfolio portfolio, @Param("date") LocalDateTime date);
+
+    @Modifying
+    @Query("delete from PortfolioSnapshot s where s.portfolio = :portfolio")
+    int deleteAllOfPortfolio(@Param("portfolio") Portfolio portfolio);
+}
@@ -0,0 +1,91 @@
+package ru.valeo.jim.service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManagerFactory;
+import javax.validation.constraints.NotNull;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+import ru.valeo.jim.dto.DbStatisticsDto;
+
+/** Hibernate statistics per shell command, counted as difference of session factory statistics before and after command.
+ * Statistics are global, so statements of background writers running at the same time are counted too.
+ * Requires hibernate.generate_statistics=true, nothing is collected otherwise. */
+@RequiredArgsConstructor
+@Component
+public class DbStatisticsCollector {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Map<String, DbStatisticsDto> statisticsByCommand = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return getStatistics().isStatisticsEnabled();
+    }
+
+    /** Get current totals of session factory to pass to {@link #record(String, DbStatisticsDto)} after command. */
+    public DbStatisticsDto snapshot() {
+        var statistics = getStatistics();
+        var dto = new DbStatisticsDto();
+        dto.setStatements(statistics.getPrepareStatementCount());
+        dto.setQueries(statistics.getQueryExecutionCount());
+        dto.setEntitiesLoaded(statistics.getEntityLoadCount());
+        dto.setCollectionsLoaded(statistics.getCollectionLoadCount());
+        dto.setCollectionsFetched(statistics.getCollectionFetchCount());
+        dto.setSecondLevelCacheHits(statistics.getSecondLevelCacheHitCount());
+        dto.setSecondLevelCacheMisses(statistics.getSecondLevelCacheMissCount());
+        return dto;
+    }
+
+    /** Add statistics since snapshot to command totals. */
+    public void record(@NotNull String command, @NotNull DbStatisticsDto before) {
+        if (!isEnabled()) {
+            return;
+        }
+        var after = snapshot();
+        var delta = new DbStatisticsDto();
+        delta.setInvocations(1);
+        delta.setStatements(after.getStatements() - before.getStatements());
+        delta.setQueries(after.getQueries() - before.getQueries());
+        delta.setEntitiesLoaded(after.getEntitiesLoaded() - before.getEntitiesLoaded());
+        delta.setCollectionsLoaded(after.getCollectionsLoaded() - before.getCollectionsLoaded());
+        delta.setCollectionsFetched(after.getCollectionsFetched() - before.getCollectionsFetched());
+        delta.setSecondLevelCacheHits(after.getSecondLevelCacheHits() - before.getSecondLevelCacheHits());
+        delta.setSecondLevelCacheMisses(after.getSecondLevelCacheMisses() - before.getSecondLevelCacheMisses());
+        statisticsByCommand.compute(command, (key, total) -> {
+            if (total == null) {
+                total = new DbStatisticsDto();
+                total.setCommand(key);
+            }
+            total.add(delta);
+            return total;
+        });
+    }
+
+    /** Get copies of totals sorted by command. */
+    public List<DbStatisticsDto> getStatistics(boolean reset) {
+        var result = statisticsByCommand.values().stream()
+                .map(total -> {
+                    var copy = new DbStatisticsDto();
+                    copy.setCommand(total.getCommand());
+                    copy.add(total);
+                    return copy;
+                })
+                .sorted(Comparator.comparing(DbStatisticsDto::getCommand))
+                .collect(Collectors.toList());
+        if (reset) {
+            statisticsByCommand.clear();
+        }
+        return result;
+    }
+
+    private Statistics getStatistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+}
@@ -0,0 +1,216 @@
+package ru.valeo.jim.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import javax.validation.constraints.NotNull;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.InstrumentPrice;
+import ru.valeo.jim.repository.InstrumentPriceRepository;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/** In-memory index of instrument prices, answers "price at or before date" without database queries.
+ * Price history of instrument is loaded on first request and updated when new price is added.
+ * History is loaded out of cache lock, concurrent requests of the same instrument wait for one load.
+ * Order of prices with the same date and time is not defined, any of them can be returned.
+ * Least recently used instruments are evicted when cache size exceeds app.priceCacheMaxInstruments,
+ * value less than 1 disables cache. */
+@Component
+public class InstrumentPriceCache {
+
+    private final InstrumentPriceRepository instrumentPriceRepository;
+    private final ApplicationConfig applicationConfig;
+    /** key - instrument symbol, value - prices sorted by date. */
+    private final Map<String, NavigableMap<LocalDateTime, BigDecimal>> pricesBySymbol;
+    /** key - instrument symbol, value - history being loaded, removed if history is changed during load. */
+    private final Map<String, CompletableFuture<NavigableMap<LocalDateTime, BigDecimal>>> loading = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public InstrumentPriceCache(InstrumentPriceRepository instrumentPriceRepository,
+                                ApplicationConfig applicationConfig) {
+        this.instrumentPriceRepository = instrumentPriceRepository;
+        this.applicationConfig = applicationConfig;
+        this.pricesBySymbol = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NavigableMap<LocalDateTime, BigDecimal>> eldest) {
+                if (size() > applicationConfig.getPriceCacheMaxInstruments()) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Get latest prices at or before date.
+     * @return map with key - instrument, value - price; instruments without prices are absent. */
+    public Map<Instrument, BigDecimal> getPrices(@NotNull Collection<Instrument> instruments,
+                                                 @NotNull LocalDateTime date) {
+        if (instruments.isEmpty()) {
+            return new HashMap<>();
+        }
+        if (!isEnabled()) {
+            return instrumentPriceRepository.findLatestByInstruments(instruments, date)
+                    .stream()
+                    .collect(Collectors.toMap(InstrumentPrice::getInstrument, InstrumentPrice::getPrice, (a, b) -> a));
+        }
+        Map<Instrument, BigDecimal> result = new HashMap<>();
+        Map<Instrument, CompletableFuture<NavigableMap<LocalDateTime, BigDecimal>>> missed = new HashMap<>();
+        List<Instrument> loadedByCaller = new ArrayList<>();
+        synchronized (pricesBySymbol) {
+            for (var instrument : instruments) {
+                var history = pricesBySymbol.get(instrument.getSymbol());
+                if (nonNull(history)) {
+                    hits++;
+                    putPrice(result, instrument, history, date);
+                    continue;
+                }
+                misses++;
+                var future = loading.get(instrument.getSymbol());
+                if (isNull(future)) {
+                    future = new CompletableFuture<>();
+                    loading.put(instrument.getSymbol(), future);
+                    loadedByCaller.add(instrument);
+                }
+                missed.put(instrument, future);
+            }
+        }
+        loadedByCaller.forEach(instrument -> load(instrument, missed.get(instrument)));
+        for (var entry : missed.entrySet()) {
+            NavigableMap<LocalDateTime, BigDecimal> history;
+            try {
+                history = entry.getValue().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            synchronized (pricesBySymbol) {
+                putPrice(result, entry.getKey(), history, date);
+            }
+        }
+        return result;
+    }
+
+    /** Add saved price to cache after current transaction commit. */
+    public void add(@NotNull InstrumentPrice price) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(price);
+                }
+            });
+        } else {
+            put(price);
+        }
+    }
+
+    /** Remove all cached prices of instrument. */
+    public void evict(@NotNull String symbol) {
+        synchronized (pricesBySymbol) {
+            pricesBySymbol.remove(symbol);
+            loading.remove(symbol);
+        }
+    }
+
+    public void clear() {
+        synchronized (pricesBySymbol) {
+            pricesBySymbol.clear();
+            loading.clear();
+        }
+    }
+
+    public String getStats() {
+        synchronized (pricesBySymbol) {
+            var requests = hits + misses;
+            return "Price cache: instruments=" + pricesBySymbol.size()
+                    + ", prices=" + pricesBySymbol.values().stream().mapToInt(Map::size).sum()
+                    + ", hits=" + hits
+                    + ", misses=" + misses
+                    + ", hitRatio=" + (requests > 0 ? hits * 100 / requests : 0) + "%"
+                    + ", evictions=" + evictions;
+        }
+    }
+
+    public long getHits() {
+        synchronized (pricesBySymbol) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (pricesBySymbol) {
+            return misses;
+        }
+    }
+
+    private boolean isEnabled() {
+        return applicationConfig.getPriceCacheMaxInstruments() > 0;
+    }
+
+    private void put(InstrumentPrice price) {
+        synchronized (pricesBySymbol) {
+            // only update loaded history, otherwise it will be loaded with this price on first request
+            var history = pricesBySymbol.get(price.getInstrument().getSymbol());
+            if (nonNull(history)) {
+                history.put(price.getWhenAdd(), price.getPrice());
+            }
+            // history being loaded can miss this price, it's not cached
+            loading.remove(price.getInstrument().getSymbol());
+        }
+    }
+
+    /** Load history of instrument out of lock and cache it, if it wasn't changed or evicted during load.
+     * Error of load is passed to requests waiting for it. */
+    private void load(Instrument instrument, CompletableFuture<NavigableMap<LocalDateTime, BigDecimal>> future) {
+        NavigableMap<LocalDateTime, BigDecimal> history;
+        try {
+            history = instrumentPriceRepository.findByInstrument(instrument).stream()
+                    .collect(Collectors.toMap(InstrumentPrice::getWhenAdd, InstrumentPrice::getPrice,
+                            (a, b) -> b, TreeMap::new));
+        } catch (RuntimeException e) {
+            synchronized (pricesBySymbol) {
+                loading.remove(instrument.getSymbol(), future);
+            }
+            future.completeExceptionally(e);
+            return;
+        }
+        synchronized (pricesBySymbol) {
+            if (loading.remove(instrument.getSymbol(), future)) {
+                pricesBySymbol.put(instrument.getSymbol(), history);
+            }
+        }
+        future.complete(history);
+    }
+
+    /** Must be called under lock. */
+    private static void putPrice(Map<Instrument, BigDecimal> result, Instrument instrument,
+                                 NavigableMap<LocalDateTime, BigDecimal> history, LocalDateTime date) {
+        var price = history.floorEntry(date);
+        if (nonNull(price)) {
+            result.put(instrument, price.getValue());
+        }
+    }
+}
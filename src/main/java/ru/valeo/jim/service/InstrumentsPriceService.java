@@ -1,9 +1,11 @@
 package ru.valeo.jim.service;
 
+import ru.valeo.jim.dto.ImportResultDto;
 import ru.valeo.jim.dto.InstrumentPriceDto;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import java.io.Reader;
 import java.util.List;
 
 /** Working with instrument prices. */
@@ -14,4 +16,9 @@ public interface InstrumentsPriceService {
 
     /** Get history by instrument. */
     List<InstrumentPriceDto> get(@NotBlank String symbol);
+
+    /** Import prices from CSV, each line: symbol,price,accumulatedCouponIncome,whenAdd.
+     * Price with % suffix is percent of bond par value, empty whenAdd - current date.
+     * Header line starting with "symbol" is skipped, lines with errors are skipped and reported. */
+    ImportResultDto importPrices(@NotNull Reader source);
 }
@@ -0,0 +1,98 @@
+package ru.valeo.jim.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import ru.valeo.jim.config.ApplicationConfig;
+
+/** Text report of all meters: timers of services and commands, JVM and GC gauges.
+ * Report is written to app.metricsDumpFile on exit if it's set. */
+@RequiredArgsConstructor
+@Component
+public class MetricsReporter {
+
+    /** Meters registered for percentiles and histogram buckets of timers, they are shown in timers lines. */
+    private static final String[] TIMER_PARTS_SUFFIXES = {".percentile", ".histogram"};
+
+    private final MeterRegistry meterRegistry;
+    private final ApplicationConfig applicationConfig;
+
+    /** Get one line for each meter sorted by name, times are in milliseconds.
+     * @param namePrefix - show only meters with name starting with prefix, all meters if null */
+    public String getReport(@Nullable String namePrefix) {
+        return meterRegistry.getMeters().stream()
+                .filter(meter -> !isTimerPart(meter))
+                .filter(meter -> namePrefix == null || meter.getId().getName().startsWith(namePrefix))
+                .sorted(Comparator.comparing((Meter meter) -> meter.getId().getName())
+                        .thenComparing(meter -> meter.getId().getTags().toString()))
+                .map(MetricsReporter::format)
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
+
+    @PreDestroy
+    void dump() {
+        if (!StringUtils.hasText(applicationConfig.getMetricsDumpFile())) {
+            return;
+        }
+        try {
+            Files.writeString(Path.of(applicationConfig.getMetricsDumpFile()), getReport(null) + System.lineSeparator());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isTimerPart(Meter meter) {
+        for (var suffix : TIMER_PARTS_SUFFIXES) {
+            if (meter.getId().getName().endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String format(Meter meter) {
+        var builder = new StringBuilder(meter.getId().getName());
+        if (!meter.getId().getTags().isEmpty()) {
+            builder.append(meter.getId().getTags().stream()
+                    .map(tag -> tag.getKey() + "=" + tag.getValue())
+                    .collect(Collectors.joining(",", "{", "}")));
+        }
+        if (meter instanceof Timer) {
+            var timer = (Timer) meter;
+            var snapshot = timer.takeSnapshot();
+            builder.append(" count=").append(timer.count())
+                    .append(" mean=").append(format(timer.mean(TimeUnit.MILLISECONDS)))
+                    .append(" max=").append(format(timer.max(TimeUnit.MILLISECONDS)));
+            for (var percentile : snapshot.percentileValues()) {
+                builder.append(" p").append(Math.round(percentile.percentile() * 100))
+                        .append('=').append(format(percentile.value(TimeUnit.MILLISECONDS)));
+            }
+            return builder.toString();
+        }
+        StreamSupport.stream(meter.measure().spliterator(), false)
+                .forEach(measurement -> builder.append(' ')
+                        .append(measurement.getStatistic().getTagValueRepresentation())
+                        .append('=').append(format(measurement.getValue())));
+        return builder.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
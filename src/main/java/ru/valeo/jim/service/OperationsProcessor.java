@@ -0,0 +1,176 @@
+package ru.valeo.jim.service;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.InstrumentPosition;
+import ru.valeo.jim.domain.Money;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.domain.OperationType;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.exception.InstrumentPositionNotFoundException;
+import ru.valeo.jim.exception.InsufficientAmountException;
+import ru.valeo.jim.exception.InsufficientMoneyException;
+
+/** Rules of changing portfolio state by operations.
+ * Used for processing new operations and for replaying operations log. */
+@AllArgsConstructor
+@Service
+public class OperationsProcessor {
+
+    private final ApplicationConfig applicationConfig;
+
+    /** Apply operation to available money and instrument positions of operation portfolio without saving. */
+    public void apply(@NotNull Operation operation) {
+        operation.setProcessed(true);
+        var portfolio = operation.getPortfolio();
+        switch (operation.getType()) {
+            case ADD_MONEY:
+            case DIVIDEND:
+            case COUPON:
+                portfolio.setAvailableMoney(portfolio.getAvailableMoney().add(operation.getTotalPrice()));
+                break;
+            case WITHDRAW_MONEY:
+            case TAX:
+                portfolio.setAvailableMoney(portfolio.getAvailableMoney().subtract(operation.getTotalPrice()));
+                break;
+            case BUY:
+                portfolio.setAvailableMoney(portfolio.getAvailableMoney()
+                        .subtract(operation.getTotalPrice())
+                        .subtract(operation.getAccumulatedCouponIncome()));
+                updateInstrumentPositionOnBuy(operation);
+                break;
+            case SELL:
+            case BOND_REDEMPTION:
+                // position first: it fails if instrument is not in portfolio
+                updateInstrumentPositionOnSell(operation);
+                portfolio.setAvailableMoney(portfolio.getAvailableMoney().add(operation.getTotalPrice())
+                        .add(operation.getAccumulatedCouponIncome()));
+                break;
+            case INSTRUMENT_CONVERSION:
+                updateInstrumentPositionOnConversion(operation);
+                break;
+            default:
+                throw new UnsupportedOperationException(operation.getType().name());
+        }
+    }
+
+    /** Reverse effect of operation on available money and instrument position without saving.
+     * Accounting price depends only on buy and sell totals, so it's recalculated without replaying other operations.
+     * @throws UnsupportedOperationException - for instrument conversion, it can't be reversed incrementally */
+    public void revert(@NotNull Operation operation) {
+        var portfolio = operation.getPortfolio();
+        switch (operation.getType()) {
+            case ADD_MONEY:
+            case DIVIDEND:
+            case COUPON:
+                subtractMoney(portfolio, operation.getTotalPrice());
+                break;
+            case WITHDRAW_MONEY:
+            case TAX:
+                portfolio.setAvailableMoney(portfolio.getAvailableMoney().add(operation.getTotalPrice()));
+                break;
+            case BUY:
+                revertInstrumentPositionOnBuy(operation);
+                portfolio.setAvailableMoney(portfolio.getAvailableMoney()
+                        .add(operation.getTotalPrice())
+                        .add(operation.getAccumulatedCouponIncome()));
+                break;
+            case SELL:
+            case BOND_REDEMPTION:
+                subtractMoney(portfolio, operation.getTotalPrice().add(operation.getAccumulatedCouponIncome()));
+                revertInstrumentPositionOnSell(operation);
+                break;
+            default:
+                throw new UnsupportedOperationException(operation.getType().name());
+        }
+    }
+
+    private void updateInstrumentPositionOnBuy(Operation operation) {
+        var portfolio = operation.getPortfolio();
+        var currentPosition = portfolio.findPosition(operation.getInstrument().getSymbol());
+        if (currentPosition.isPresent()) {
+            // update existing: need to recalc accounting price
+            var position = currentPosition.get();
+            position.setAmount(position.getAmount() + operation.getAmount());
+            position.setBuyTotalPrice(position.getBuyTotalPrice().add(operation.getTotalPrice()));
+            position.setAccountingPrice(calcAccountingPrice(position));
+        } else {
+            // add new position: operation price === accounting price
+            var newPosition = new InstrumentPosition()
+                .setPortfolio(portfolio)
+                .setInstrument(operation.getInstrument())
+                .setAmount(operation.getAmount())
+                .setAccountingPrice(operation.getPrice())
+                .setBuyTotalPrice(operation.getTotalPrice());
+            portfolio.addPosition(newPosition);
+        }
+    }
+
+    private void updateInstrumentPositionOnSell(Operation operation) {
+        var portfolio = operation.getPortfolio();
+        var position = portfolio.findPosition(operation.getInstrument().getSymbol())
+                .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(),
+                        operation.getInstrument().getSymbol()));
+
+        position.setAmount(position.getAmount() - operation.getAmount());
+        if (operation.getType() == OperationType.SELL) {
+            position.setSellTotalPrice(position.getSellTotalPrice().add(operation.getTotalPrice()));
+        }
+        position.setAccountingPrice(position.getAmount() > 0 ? calcAccountingPrice(position) : BigDecimal.ZERO);
+    }
+
+    private void updateInstrumentPositionOnConversion(Operation operation) {
+        var portfolio = operation.getPortfolio();
+        var position = portfolio.findPosition(operation.getInstrument().getSymbol())
+                .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(),
+                        operation.getInstrument().getSymbol()));
+
+        position.setAmount(operation.getAmount());
+        position.setAccountingPrice(operation.getPrice());
+    }
+
+    private void revertInstrumentPositionOnBuy(Operation operation) {
+        var position = getPosition(operation);
+        if (position.getAmount() < operation.getAmount()) {
+            throw new InsufficientAmountException(operation.getPortfolio().getName(),
+                    operation.getInstrument().getSymbol());
+        }
+        position.setAmount(position.getAmount() - operation.getAmount());
+        position.setBuyTotalPrice(position.getBuyTotalPrice().subtract(operation.getTotalPrice()));
+        position.setAccountingPrice(position.getAmount() > 0 ? calcAccountingPrice(position) : BigDecimal.ZERO);
+    }
+
+    private void revertInstrumentPositionOnSell(Operation operation) {
+        var position = getPosition(operation);
+        position.setAmount(position.getAmount() + operation.getAmount());
+        if (operation.getType() == OperationType.SELL) {
+            position.setSellTotalPrice(position.getSellTotalPrice().subtract(operation.getTotalPrice()));
+        }
+        position.setAccountingPrice(calcAccountingPrice(position));
+    }
+
+    private InstrumentPosition getPosition(Operation operation) {
+        var portfolio = operation.getPortfolio();
+        return portfolio.findPosition(operation.getInstrument().getSymbol())
+                .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(),
+                        operation.getInstrument().getSymbol()));
+    }
+
+    private static void subtractMoney(Portfolio portfolio, BigDecimal value) {
+        if (portfolio.getAvailableMoney().compareTo(value) < 0) {
+            throw new InsufficientMoneyException(portfolio.getName());
+        }
+        portfolio.setAvailableMoney(portfolio.getAvailableMoney().subtract(value));
+    }
+
+    /** Calc accounting price based on total values and current amount. */
+    private BigDecimal calcAccountingPrice(InstrumentPosition position) {
+        return Money.divideFloor(position.getBuyTotalPrice().subtract(position.getSellTotalPrice()),
+                position.getAmount(), applicationConfig.getBigdecimalOperationsScale());
+    }
+}
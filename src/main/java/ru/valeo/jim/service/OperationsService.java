@@ -1,7 +1,13 @@
 package ru.valeo.jim.service;
 
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import javax.validation.constraints.NotNull;
 
+import org.springframework.lang.Nullable;
+import ru.valeo.jim.dto.ImportResultDto;
 import ru.valeo.jim.dto.operation.AddMoneyDto;
 import ru.valeo.jim.dto.operation.BondRedemptionDto;
 import ru.valeo.jim.dto.operation.BuyBondDto;
@@ -9,6 +15,7 @@ import ru.valeo.jim.dto.operation.BuyInstrumentDto;
 import ru.valeo.jim.dto.operation.CouponDto;
 import ru.valeo.jim.dto.operation.DividendDto;
 import ru.valeo.jim.dto.operation.InstrumentConversionDto;
+import ru.valeo.jim.dto.operation.OperationDto;
 import ru.valeo.jim.dto.operation.SellBondDto;
 import ru.valeo.jim.dto.operation.SellInstrumentDto;
 import ru.valeo.jim.dto.operation.TaxDto;
@@ -49,4 +56,28 @@ public interface OperationsService {
 
     /** Instrument conversion in portfolio. */
     InstrumentConversionDto instrumentConversion(@NotNull InstrumentConversionDto dto);
+
+    /** Submit operation of any type to queue of its portfolio. Queued operations are applied by one writer
+     * per portfolio in batches: one transaction and one batch insert for many operations.
+     * @return - future with result DTO or validation error, completed after commit */
+    <D extends OperationDto> CompletableFuture<D> submit(@NotNull D dto);
+
+    /** Import operations to portfolio from broker report, each line is JSON object or CSV:
+     * type,symbol,amount,price,accumulatedCouponIncome,percent,whenAdd.
+     * For bonds percent is used instead of price, for money operations price is value.
+     * Lines with errors are skipped and reported. */
+    ImportResultDto importOperations(@Nullable String portfolioName, @NotNull Reader source);
+
+    /** Mark operation deleted and reverse its effect on available money and instrument position.
+     * Instrument conversion can't be reversed incrementally, portfolio is rebuilt from operations log for it.
+     * @return - result description */
+    String deleteOperation(@NotNull Long id);
+
+    /** Unmark deleted operation and apply it again, portfolio is rebuilt for instrument conversion.
+     * @return - result description */
+    String restoreOperation(@NotNull Long id);
+
+    /** Compare buy and sell totals of instrument positions with totals calculated by all operations.
+     * @return - descriptions of inconsistent positions, empty if all positions are consistent. */
+    List<String> checkAccountingPrices(@Nullable String portfolioName);
 }
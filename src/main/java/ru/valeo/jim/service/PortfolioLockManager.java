@@ -0,0 +1,88 @@
+package ru.valeo.jim.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.valeo.jim.config.ApplicationConfig;
+
+import static java.util.Optional.ofNullable;
+
+/** Serializes changes of the same portfolio in process, changes of different portfolios run in parallel.
+ * Locks are striped by portfolio name, lock is held until transaction is committed.
+ * Action joins transaction of caller (e.g. batch of script), then lock is held until that transaction completes.
+ * Transaction started by lock manager is retried if versioned entities were changed outside of lock. */
+@Component
+public class PortfolioLockManager {
+
+    private final ApplicationConfig applicationConfig;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock[] locks;
+
+    public PortfolioLockManager(ApplicationConfig applicationConfig, PlatformTransactionManager transactionManager) {
+        this.applicationConfig = applicationConfig;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.locks = new ReentrantLock[Math.max(1, applicationConfig.getPortfolioLockStripes())];
+        for (var i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /** Execute action in transaction holding lock of portfolio, transaction is new if caller has no transaction.
+     * @param portfolioName - portfolio name, if null - default portfolio */
+    public <T> T execute(@Nullable String portfolioName, Supplier<T> action) {
+        var lock = getLock(ofNullable(portfolioName).orElseGet(applicationConfig::getDefaultPortfolioName));
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return executeInTransaction(portfolioName, lock, action);
+        }
+        lock.lock();
+        try {
+            for (var attempt = 1; ; attempt++) {
+                try {
+                    return transactionTemplate.execute(status -> action.get());
+                } catch (OptimisticLockingFailureException e) {
+                    if (attempt > applicationConfig.getOptimisticLockRetries()) {
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Execute action in transaction of caller, it can't be retried, optimistic locking failure rolls it back.
+     * Wait for lock is limited: transaction can hold locks of several portfolios and deadlock with other one. */
+    private <T> T executeInTransaction(@Nullable String portfolioName, ReentrantLock lock, Supplier<T> action) {
+        if (!lock.isHeldByCurrentThread()) {
+            try {
+                if (!lock.tryLock(applicationConfig.getPortfolioLockTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                    throw new CannotAcquireLockException("Lock of portfolio " + portfolioName + " is not acquired");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CannotAcquireLockException("Lock of portfolio " + portfolioName + " is not acquired", e);
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    lock.unlock();
+                }
+            });
+        }
+        return action.get();
+    }
+
+    private ReentrantLock getLock(@Nullable String portfolioName) {
+        var hash = ofNullable(portfolioName).map(String::hashCode).orElse(0);
+        return locks[Math.floorMod(hash, locks.length)];
+    }
+}
@@ -17,24 +17,38 @@ import ru.valeo.jim.config.ApplicationConfig;
 import ru.valeo.jim.domain.InstrumentCategory;
 import ru.valeo.jim.domain.InstrumentCategoryTargetDistribution;
 import ru.valeo.jim.domain.InstrumentPosition;
-import ru.valeo.jim.domain.InstrumentPrice;
+import ru.valeo.jim.domain.Money;
 import ru.valeo.jim.domain.OperationType;
 import ru.valeo.jim.domain.Portfolio;
 import ru.valeo.jim.dto.PortfolioRebalancePropositionDto;
-import ru.valeo.jim.repository.InstrumentPriceRepository;
+import ru.valeo.jim.service.jfr.RebalanceEvent;
 
-import static java.util.Objects.isNull;
 import static java.util.Optional.ofNullable;
 
 @AllArgsConstructor
 @Service
 public class PortfolioRebalanceHelper {
 
-    private final InstrumentPriceRepository instrumentPriceRepository;
+    private final InstrumentPriceCache instrumentPriceCache;
     private final ApplicationConfig applicationConfig;
 
+    /** Propose operations by categories, computation is recorded as JFR event. */
     @Transactional(readOnly = true)
     public PortfolioRebalancePropositionDto rebalance(@NotNull Portfolio portfolio, boolean useAvailableMoney) {
+        var event = new RebalanceEvent();
+        event.begin();
+        var result = propose(portfolio, useAvailableMoney);
+        if (event.shouldCommit()) {
+            event.setPortfolioName(portfolio.getName());
+            event.setPositions(portfolio.getPositions().size());
+            event.setUseAvailableMoney(useAvailableMoney);
+            event.setProposedOperations(result.getOperations().size());
+            event.commit();
+        }
+        return result;
+    }
+
+    private PortfolioRebalancePropositionDto propose(Portfolio portfolio, boolean useAvailableMoney) {
         var result = new PortfolioRebalancePropositionDto();
         result.setPortfolioName(portfolio.getName());
 
@@ -95,23 +109,21 @@ public class PortfolioRebalanceHelper {
      * key - instrument category
      * value - sum of total actual prices of instruments in category. */
     private Map<InstrumentCategory, BigDecimal> getTotalPricesByCategory(@NotNull List<InstrumentPosition> positions) {
-        var actualPrices = instrumentPriceRepository
-                .findByWhenAddLessThanEqualOrderByWhenAddDesc(LocalDateTime.now())
-                .stream()
-                .collect(Collectors.toMap(InstrumentPrice::getInstrument, InstrumentPrice::getPrice, (a, b) -> a));
         Map<InstrumentCategory, BigDecimal> data = new HashMap<>();
+        if (positions.isEmpty()) {
+            return data;
+        }
+        var instruments = positions.stream().map(InstrumentPosition::getInstrument).collect(Collectors.toSet());
+        var actualPrices = instrumentPriceCache.getPrices(instruments, LocalDateTime.now());
+        Map<InstrumentCategory, Money.Sum> sums = new HashMap<>();
         for (var position: positions) {
             var instrumentPrice = ofNullable(actualPrices.get(position.getInstrument()))
                     .orElse(position.getAccountingPrice());
-            var positionPrice = instrumentPrice.multiply(BigDecimal.valueOf(position.getAmount()));
-            data.compute(position.getInstrument().getCategory(), (k,v) -> {
-                if (isNull(v)) {
-                    return positionPrice;
-                } else {
-                    return v.add(positionPrice);
-                }
-            });
+            sums.computeIfAbsent(position.getInstrument().getCategory(),
+                    category -> new Money.Sum(applicationConfig.getBigdecimalOperationsScale()))
+                    .addProduct(instrumentPrice, position.getAmount());
         }
+        sums.forEach((category, sum) -> data.put(category, sum.toBigDecimal()));
         return data;
     }
 }
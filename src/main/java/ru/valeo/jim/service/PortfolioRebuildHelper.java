@@ -0,0 +1,290 @@
+package ru.valeo.jim.service;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.InstrumentPosition;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.domain.OperationType;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.domain.PortfolioSnapshot;
+import ru.valeo.jim.domain.PortfolioSnapshotPosition;
+import ru.valeo.jim.exception.InstrumentNotFoundException;
+import ru.valeo.jim.exception.PortfolioNotFoundException;
+import ru.valeo.jim.repository.InstrumentRepository;
+import ru.valeo.jim.repository.PortfolioRepository;
+import ru.valeo.jim.repository.PortfolioSnapshotRepository;
+import ru.valeo.jim.service.jfr.AccountingPriceEvent;
+
+import static java.util.Objects.nonNull;
+import static java.util.Optional.ofNullable;
+
+/** Rebuild instrument positions and available money of portfolios by replaying operations log.
+ * Operations are read with cursor and replayed in memory, portfolios are replayed in parallel,
+ * each portfolio is replayed and saved in one transaction holding its lock.
+ * State of portfolio at date is built from nearest snapshot and replay of later operations. */
+@AllArgsConstructor
+@Service
+public class PortfolioRebuildHelper {
+
+    private static final String SELECT_OPERATIONS_SQL = "select type, instrument_id, amount, price, " +
+            "accumulated_coupon_income, percent, when_add from operation " +
+            "where portfolio_id = ? and deleted = false and when_add > ? and when_add <= ? order by when_add, id";
+    private static final String SELECT_FIRST_OPERATION_DATE_SQL = "select min(when_add) from operation " +
+            "where portfolio_id = ? and deleted = false";
+    private static final LocalDateTime MIN_DATE = LocalDateTime.of(1900, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_DATE = LocalDateTime.of(9999, 12, 31, 0, 0);
+    private static final String UPDATE_PROCESSED_SQL = "update operation set processed = true " +
+            "where portfolio_id = ? and deleted = false and processed = false";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PortfolioRepository portfolioRepository;
+    private final PortfolioSnapshotRepository snapshotRepository;
+    private final InstrumentRepository instrumentRepository;
+    private final OperationsProcessor operationsProcessor;
+    private final ApplicationConfig applicationConfig;
+    private final PortfolioLockManager lockManager;
+    private final ReferenceDataCache referenceDataCache;
+
+    /** Rebuild portfolios in parallel, each portfolio is replayed and saved in own transaction holding its lock,
+     * so operations added concurrently are not lost.
+     * @return - result description by portfolio, portfolios with errors in replay are not changed. */
+    public List<String> rebuild(@NotNull Collection<String> portfolioNames) {
+        var instruments = instrumentRepository.findAll().stream()
+                .collect(Collectors.toMap(Instrument::getSymbol, Function.identity()));
+        List<String> result = new ArrayList<>();
+
+        var pool = new ForkJoinPool(applicationConfig.getRebuildParallelism());
+        try {
+            Map<String, ForkJoinTask<String>> tasks = new LinkedHashMap<>();
+            for (var portfolioName : portfolioNames) {
+                tasks.put(portfolioName, pool.submit(() -> lockManager.execute(portfolioName,
+                        () -> describe(rebuildInTransaction(portfolioName, instruments::get)))));
+            }
+            tasks.forEach((portfolioName, task) -> {
+                try {
+                    result.add(task.join());
+                } catch (RuntimeException e) {
+                    result.add(portfolioName + ": not rebuilt, error on replay - " + e.getMessage());
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Rebuild portfolio in current transaction, should be called holding lock of portfolio.
+     * Changes of transaction are flushed before replay, so they are replayed too.
+     * Errors of replay and save are thrown, caller's transaction should be rolled back.
+     * @return - result description */
+    public String rebuildInTransaction(@NotNull String portfolioName) {
+        Map<String, Instrument> instruments = new HashMap<>();
+        return describe(rebuildInTransaction(portfolioName,
+                symbol -> instruments.computeIfAbsent(symbol, s -> referenceDataCache.findInstrument(s)
+                        .orElseThrow(() -> new InstrumentNotFoundException(s)))));
+    }
+
+    /** Get state of portfolio (available money and positions) after all operations at or before date.
+     * Replay starts from nearest snapshot, should be called in transaction. */
+    public Portfolio getStateAt(@NotNull Portfolio portfolio, @NotNull LocalDateTime date) {
+        var snapshot = snapshotRepository
+                .findFirstByPortfolioAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(portfolio, date);
+        var state = snapshot.map(PortfolioRebuildHelper::fromSnapshot)
+                .orElseGet(() -> emptyState(portfolio.getName()));
+        Map<String, Instrument> instruments = new HashMap<>();
+        replay(state, snapshot.map(PortfolioSnapshot::getSnapshotDate).orElse(null), date,
+                symbol -> instruments.computeIfAbsent(symbol, s -> referenceDataCache.findInstrument(s)
+                        .orElseThrow(() -> new InstrumentNotFoundException(s))));
+
+        state.setCurrency(portfolio.getCurrency());
+        state.setCategoryTargetDistributions(portfolio.getCategoryTargetDistributions());
+        for (var position : state.getPositions()) {
+            portfolio.findPosition(position.getInstrument().getSymbol())
+                    .ifPresent(current -> position.setExcludeFromDistribution(current.getExcludeFromDistribution()));
+        }
+        return state;
+    }
+
+    /** Create or replace snapshot of portfolio at date, should be called in transaction. */
+    public PortfolioSnapshot createSnapshot(@NotNull Portfolio portfolio, @NotNull LocalDateTime date) {
+        var state = getStateAt(portfolio, date);
+        var snapshot = snapshotRepository.findByPortfolioAndSnapshotDate(portfolio, date)
+                .orElseGet(() -> new PortfolioSnapshot().setPortfolio(portfolio).setSnapshotDate(date));
+        snapshot.setAvailableMoney(state.getAvailableMoney());
+        snapshot.getPositions().clear();
+        for (var position : state.getPositions()) {
+            snapshot.getPositions().add(new PortfolioSnapshotPosition()
+                    .setSnapshot(snapshot)
+                    .setInstrument(position.getInstrument())
+                    .setAmount(position.getAmount())
+                    .setAccountingPrice(position.getAccountingPrice())
+                    .setBuyTotalPrice(position.getBuyTotalPrice())
+                    .setSellTotalPrice(position.getSellTotalPrice()));
+        }
+        return snapshotRepository.save(snapshot);
+    }
+
+    /** Create missing snapshots at end of each month from first operation to last completed month,
+     * each snapshot is built from previous one. Should be called in transaction.
+     * @return - created snapshots */
+    public List<PortfolioSnapshot> createMonthlySnapshots(@NotNull Portfolio portfolio) {
+        var firstOperationDate = jdbcTemplate.queryForObject(SELECT_FIRST_OPERATION_DATE_SQL,
+                LocalDateTime.class, portfolio.getName());
+        List<PortfolioSnapshot> result = new ArrayList<>();
+        if (firstOperationDate == null) {
+            return result;
+        }
+        var lastMonth = YearMonth.now().minusMonths(1);
+        for (var month = YearMonth.from(firstOperationDate); !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            var date = month.atEndOfMonth().atTime(23, 59, 59);
+            if (snapshotRepository.findByPortfolioAndSnapshotDate(portfolio, date).isEmpty()) {
+                result.add(createSnapshot(portfolio, date));
+            }
+        }
+        return result;
+    }
+
+    private ReplayResult rebuildInTransaction(String portfolioName, Function<String, Instrument> instruments) {
+        portfolioRepository.flush();
+        var replayResult = replay(emptyState(portfolioName), null, null, instruments);
+        save(replayResult);
+        // entity constraints of replayed state are checked before caller's changes are committed
+        portfolioRepository.flush();
+        return replayResult;
+    }
+
+    /** Replay not deleted operations of portfolio with whenAdd in (after, until] on state,
+     * replay is recorded as JFR event of accounting prices recalculation. */
+    private ReplayResult replay(Portfolio state, @Nullable LocalDateTime after, @Nullable LocalDateTime until,
+                                Function<String, Instrument> instruments) {
+        var event = new AccountingPriceEvent();
+        event.begin();
+        var result = new ReplayResult(state);
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(SELECT_OPERATIONS_SQL);
+            statement.setFetchSize(applicationConfig.getImportBatchSize());
+            statement.setString(1, state.getName());
+            statement.setObject(2, ofNullable(after).orElse(MIN_DATE));
+            statement.setObject(3, ofNullable(until).orElse(MAX_DATE));
+            return statement;
+        }, (RowCallbackHandler) resultSet -> {
+            operationsProcessor.apply(mapOperation(resultSet, state, instruments));
+            result.operationsCount++;
+        });
+        if (event.shouldCommit()) {
+            event.setPortfolioName(state.getName());
+            event.setSource(AccountingPriceEvent.REPLAY);
+            event.setPositions(state.getPositions().size());
+            event.setOperationsScanned(result.operationsCount);
+            event.commit();
+        }
+        return result;
+    }
+
+    private static Portfolio emptyState(String portfolioName) {
+        return new Portfolio()
+                .setName(portfolioName)
+                .setAvailableMoney(BigDecimal.ZERO)
+                .setPositions(new ArrayList<>());
+    }
+
+    private static Portfolio fromSnapshot(PortfolioSnapshot snapshot) {
+        var state = emptyState(snapshot.getPortfolio().getName())
+                .setAvailableMoney(snapshot.getAvailableMoney());
+        for (var snapshotPosition : snapshot.getPositions()) {
+            state.addPosition(new InstrumentPosition()
+                    .setPortfolio(state)
+                    .setInstrument(snapshotPosition.getInstrument())
+                    .setAmount(snapshotPosition.getAmount())
+                    .setAccountingPrice(snapshotPosition.getAccountingPrice())
+                    .setBuyTotalPrice(snapshotPosition.getBuyTotalPrice())
+                    .setSellTotalPrice(snapshotPosition.getSellTotalPrice()));
+        }
+        return state;
+    }
+
+    private static Operation mapOperation(ResultSet resultSet, Portfolio portfolio,
+                                          Function<String, Instrument> instruments) throws SQLException {
+        var instrumentId = resultSet.getString("instrument_id");
+        return new Operation()
+                .setPortfolio(portfolio)
+                .setType(OperationType.valueOf(resultSet.getString("type")))
+                .setInstrument(nonNull(instrumentId) ? instruments.apply(instrumentId) : null)
+                .setAmount(resultSet.getInt("amount"))
+                .setPrice(resultSet.getBigDecimal("price"))
+                .setAccumulatedCouponIncome(ofNullable(resultSet.getBigDecimal("accumulated_coupon_income"))
+                        .orElse(BigDecimal.ZERO))
+                .setPercent(ofNullable(resultSet.getBigDecimal("percent")).orElse(BigDecimal.ZERO))
+                .setWhenAdd(resultSet.getTimestamp("when_add").toLocalDateTime());
+    }
+
+    /** Copy replayed state to stored portfolio, keeps settings of existing positions. */
+    private void save(ReplayResult replayResult) {
+        var replayed = replayResult.getPortfolio();
+        var portfolio = portfolioRepository.findById(replayed.getName())
+                .orElseThrow(() -> new PortfolioNotFoundException(replayed.getName()));
+        portfolio.setAvailableMoney(replayed.getAvailableMoney());
+        for (var position : new ArrayList<>(portfolio.getPositions())) {
+            if (replayed.findPosition(position.getInstrument().getSymbol()).isEmpty()) {
+                portfolio.removePosition(position);
+            }
+        }
+        for (var replayedPosition : replayed.getPositions()) {
+            var position = portfolio.findPosition(replayedPosition.getInstrument().getSymbol())
+                    .orElseGet(() -> {
+                        var newPosition = new InstrumentPosition()
+                                .setPortfolio(portfolio)
+                                .setInstrument(replayedPosition.getInstrument());
+                        portfolio.addPosition(newPosition);
+                        return newPosition;
+                    });
+            position.setAmount(replayedPosition.getAmount())
+                    .setAccountingPrice(replayedPosition.getAccountingPrice())
+                    .setBuyTotalPrice(replayedPosition.getBuyTotalPrice())
+                    .setSellTotalPrice(replayedPosition.getSellTotalPrice());
+        }
+        portfolioRepository.save(portfolio);
+        jdbcTemplate.update(UPDATE_PROCESSED_SQL, portfolio.getName());
+    }
+
+    private static String describe(ReplayResult replayResult) {
+        return replayResult.getPortfolio().getName() + ": replayed "
+                + replayResult.getOperationsCount() + " operations, positions: "
+                + replayResult.getPortfolio().getPositions().size()
+                + ", available money: " + replayResult.getPortfolio().getAvailableMoney();
+    }
+
+    @Getter
+    private static class ReplayResult {
+        private final Portfolio portfolio;
+        private long operationsCount;
+
+        ReplayResult(Portfolio portfolio) {
+            this.portfolio = portfolio;
+        }
+    }
+}
@@ -9,7 +9,10 @@ import javax.validation.constraints.NotNull;
 
 import org.springframework.lang.Nullable;
 import ru.valeo.jim.dto.InstrumentPositionDto;
+import ru.valeo.jim.dto.OperationsFilterDto;
+import ru.valeo.jim.dto.OperationsPageDto;
 import ru.valeo.jim.dto.PortfolioDto;
+import ru.valeo.jim.dto.PortfolioDashboardDto;
 import ru.valeo.jim.dto.PortfolioInstrumentsDistributionDto;
 import ru.valeo.jim.dto.PortfolioRebalancePropositionDto;
 import ru.valeo.jim.dto.operation.OperationDto;
@@ -41,6 +44,13 @@ public interface PortfolioService {
     /** Get all processed operations in portfolio. */
     List<OperationDto> getProcessedOperations(@Nullable String portfolioName);
 
+    /** Get page of processed operations matching filter, newest first.
+     * @param filter - filter by type, instrument and date range, null - all operations
+     * @param afterId - id of last operation on previous page, null for first page
+     * @param limit - max count of operations on page */
+    OperationsPageDto getProcessedOperations(@Nullable String portfolioName, @Nullable OperationsFilterDto filter,
+                                             @Nullable Long afterId, int limit);
+
     /** Get instruments distribution in portfolio by accounting prices */
     PortfolioInstrumentsDistributionDto getInstrumentsDistributionByAccoutingPrice(@Nullable String portfolioName);
 
@@ -52,6 +62,10 @@ public interface PortfolioService {
     /** Get target instruments distribution in portfolio. */
     PortfolioInstrumentsDistributionDto getTargetInstrumentsDistribution(@Nullable String portfolioName);
 
+    /** Get portfolio, its positions, target distribution and distributions by accounting and actual prices at once.
+     * @param date - date for what actual prices will search, null - now */
+    PortfolioDashboardDto getDashboard(@Nullable String portfolioName, @Nullable LocalDateTime date);
+
     /** Get rebalance proposition by target portfolio categories distribution.
      * @param useAvailableMoney - use all available money in portfolio. */
     PortfolioRebalancePropositionDto getRebalanceProposition(@Nullable String portfolioName, boolean useAvailableMoney);
@@ -62,6 +76,36 @@ public interface PortfolioService {
      * - set available money to 0 */
     void reinit(@NotBlank String portfolioName);
 
+    /** Get portfolio with available money at date. */
+    Optional<PortfolioDto> getPortfolioAt(@NotBlank String name, @NotNull LocalDateTime date);
+
+    /** Get instrument positions at date: nearest snapshot and replay of later operations. */
+    List<InstrumentPositionDto> getInstrumentPositionsAt(@Nullable String portfolioName, @NotNull LocalDateTime date);
+
+    /** Get instruments distribution by accounting price of positions at date. */
+    PortfolioInstrumentsDistributionDto getInstrumentsDistributionByAccountingPriceAt(@Nullable String portfolioName,
+                                                                                      @NotNull LocalDateTime date);
+
+    /** Get instruments distribution of positions at date by prices actual at the same date. */
+    PortfolioInstrumentsDistributionDto getInstrumentsDistributionByActualPriceAt(@Nullable String portfolioName,
+                                                                                  @NotNull LocalDateTime date);
+
+    /** Create or replace snapshot of portfolio state at date.
+     * @return - description of snapshot */
+    String createSnapshot(@Nullable String portfolioName, @NotNull LocalDateTime date);
+
+    /** Create missing snapshots at end of each month up to last completed month.
+     * @return - descriptions of created snapshots */
+    List<String> createMonthlySnapshots(@Nullable String portfolioName);
+
+    /** Rebuild instrument positions and available money of portfolio by replaying its not deleted operations.
+     * @return - rebuild results */
+    List<String> rebuild(@Nullable String portfolioName);
+
+    /** Rebuild all portfolios by replaying their not deleted operations, portfolios are replayed in parallel.
+     * @return - rebuild results by portfolios */
+    List<String> rebuildAll();
+
     /** Switching setting excludeFromDistribution on InstrumentPosition in portfolio*/
     void toggleExcludeInstrumentFromDistribution(@NotBlank String symbol, String portfolioName);
 }
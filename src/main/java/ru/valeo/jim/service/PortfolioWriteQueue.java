@@ -0,0 +1,149 @@
+package ru.valeo.jim.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import static java.util.Objects.nonNull;
+
+/** Queues of tasks by portfolio. Each queue is drained by one writer at a time, writer gets tasks in batches
+ * and should complete their futures. Queues of different portfolios are drained in parallel.
+ * On shutdown queued tasks are written, tasks left after timeout are completed exceptionally.
+ * @param <T> - type of task payload */
+public class PortfolioWriteQueue<T> {
+
+    private final ConcurrentMap<String, PortfolioQueue<T>> queues = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final BiConsumer<String, List<Task<T>>> writer;
+
+    public PortfolioWriteQueue(int writers, int batchSize, BiConsumer<String, List<Task<T>>> writer) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, writers), runnable -> {
+            var thread = new Thread(runnable, "portfolio-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = writer;
+    }
+
+    /** Add task to queue of portfolio.
+     * @return - future completed by writer */
+    public <R> CompletableFuture<R> submit(String portfolioName, T payload) {
+        var task = new Task<T>(payload);
+        var queue = queues.computeIfAbsent(portfolioName, name -> new PortfolioQueue<>());
+        queue.getTasks().add(task);
+        schedule(portfolioName, queue);
+        @SuppressWarnings("unchecked")
+        var future = (CompletableFuture<R>) task.getFuture();
+        return future;
+    }
+
+    /** Stop accepting tasks and wait until queued tasks are written.
+     * Tasks submitted after shutdown and tasks not written in timeout are completed exceptionally.
+     * @return - true if all queued tasks are written */
+    public boolean shutdown(Duration timeout) {
+        executor.shutdown();
+        var terminated = false;
+        try {
+            terminated = executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!terminated) {
+            executor.shutdownNow();
+        }
+        queues.forEach(this::reject);
+        return terminated;
+    }
+
+    private void schedule(String portfolioName, PortfolioQueue<T> queue) {
+        if (queue.getScheduled().compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> drain(portfolioName, queue));
+            } catch (RejectedExecutionException e) {
+                queue.getScheduled().set(false);
+                reject(portfolioName, queue);
+            }
+        }
+    }
+
+    private void drain(String portfolioName, PortfolioQueue<T> queue) {
+        // queue is owned by current writer until scheduled flag is cleared
+        while (!Thread.currentThread().isInterrupted()) {
+            write(portfolioName, queue);
+            if (queue.getTasks().isEmpty()) {
+                queue.getScheduled().set(false);
+                // task added before flag is cleared is not scheduled by its submitter
+                if (queue.getTasks().isEmpty() || !queue.getScheduled().compareAndSet(false, true)) {
+                    return;
+                }
+            } else if (continueLater(portfolioName, queue)) {
+                return;
+            }
+        }
+        queue.getScheduled().set(false);
+    }
+
+    /** Let writer take queues of other portfolios, queue stays scheduled.
+     * @return - false if executor is shut down, then queue is drained by current writer */
+    private boolean continueLater(String portfolioName, PortfolioQueue<T> queue) {
+        try {
+            executor.execute(() -> drain(portfolioName, queue));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void write(String portfolioName, PortfolioQueue<T> queue) {
+        List<Task<T>> batch = new ArrayList<>();
+        Task<T> task;
+        while (batch.size() < batchSize && nonNull(task = queue.getTasks().poll())) {
+            batch.add(task);
+        }
+        if (!batch.isEmpty()) {
+            try {
+                writer.accept(portfolioName, batch);
+            } catch (RuntimeException e) {
+                // tasks completed by writer are not changed
+                batch.forEach(t -> t.getFuture().completeExceptionally(e));
+            }
+        }
+    }
+
+    private void reject(String portfolioName, PortfolioQueue<T> queue) {
+        Task<T> task;
+        while (nonNull(task = queue.getTasks().poll())) {
+            task.getFuture().completeExceptionally(
+                    new RejectedExecutionException("Write queue of portfolio " + portfolioName + " is shut down"));
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Task<T> {
+        private final T payload;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+    }
+
+    @Getter
+    private static class PortfolioQueue<T> {
+        private final Queue<Task<T>> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,156 @@
+package ru.valeo.jim.service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.validation.constraints.NotNull;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Currency;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.InstrumentCategory;
+import ru.valeo.jim.repository.CurrencyRepository;
+import ru.valeo.jim.repository.InstrumentCategoryRepository;
+import ru.valeo.jim.repository.InstrumentRepository;
+
+import static java.util.Objects.nonNull;
+
+/** Read-through cache of rarely changed reference data: currencies, instrument categories and instruments.
+ * Returned entities are detached and shared, they may be used as references of other entities but must not be changed.
+ * Entries are evicted by services changing reference data, app.referenceDataCacheEnabled=false disables cache. */
+@Component
+public class ReferenceDataCache {
+
+    private final ApplicationConfig applicationConfig;
+    private final Region<Currency> currencies;
+    private final Region<InstrumentCategory> categories;
+    private final Region<Instrument> instruments;
+
+    public ReferenceDataCache(CurrencyRepository currencyRepository,
+                              InstrumentCategoryRepository instrumentCategoryRepository,
+                              InstrumentRepository instrumentRepository,
+                              ApplicationConfig applicationConfig) {
+        this.applicationConfig = applicationConfig;
+        this.currencies = new Region<>("currencies", currencyRepository::findById);
+        this.categories = new Region<>("categories", instrumentCategoryRepository::findById);
+        this.instruments = new Region<>("instruments", instrumentRepository::findById);
+    }
+
+    public Optional<Currency> findCurrency(@NotNull String code) {
+        return currencies.find(code);
+    }
+
+    public Optional<InstrumentCategory> findCategory(@NotNull String code) {
+        return categories.find(code);
+    }
+
+    public Optional<Instrument> findInstrument(@NotNull String symbol) {
+        return instruments.find(symbol);
+    }
+
+    /** Evict currency now and after current transaction commit, instruments refer to currencies so they are evicted too. */
+    public void evictCurrency(@NotNull String code) {
+        evictNowAndAfterCommit(() -> {
+            currencies.evict(code);
+            instruments.clear();
+        });
+    }
+
+    /** Evict category now and after current transaction commit, instruments refer to categories so they are evicted too. */
+    public void evictCategory(@NotNull String code) {
+        evictNowAndAfterCommit(() -> {
+            categories.evict(code);
+            instruments.clear();
+        });
+    }
+
+    /** Evict instrument now and after current transaction commit. */
+    public void evictInstrument(@NotNull String symbol) {
+        evictNowAndAfterCommit(() -> instruments.evict(symbol));
+    }
+
+    public void clear() {
+        currencies.clear();
+        categories.clear();
+        instruments.clear();
+    }
+
+    public String getStats() {
+        return "Reference data cache: " + currencies.getStats() + "; " + categories.getStats() + "; "
+                + instruments.getStats();
+    }
+
+    public long getHits() {
+        return currencies.hits.sum() + categories.hits.sum() + instruments.hits.sum();
+    }
+
+    public long getMisses() {
+        return currencies.misses.sum() + categories.misses.sum() + instruments.misses.sum();
+    }
+
+    /** Evicting before commit prevents usage of changed entity in current transaction,
+     * evicting after commit - caching of old value loaded by concurrent transaction. */
+    private void evictNowAndAfterCommit(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private class Region<V> {
+        private final String name;
+        private final Function<String, Optional<V>> loader;
+        /** Absent values are not cached, so new entities are found without eviction. */
+        private final Map<String, V> values = new ConcurrentHashMap<>();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        Region(String name, Function<String, Optional<V>> loader) {
+            this.name = name;
+            this.loader = loader;
+        }
+
+        Optional<V> find(String key) {
+            if (!applicationConfig.isReferenceDataCacheEnabled()) {
+                return loader.apply(key);
+            }
+            var value = values.get(key);
+            if (nonNull(value)) {
+                hits.increment();
+                return Optional.of(value);
+            }
+            misses.increment();
+            var loaded = loader.apply(key);
+            loaded.ifPresent(v -> values.putIfAbsent(key, v));
+            return loaded;
+        }
+
+        void evict(String key) {
+            values.remove(key);
+        }
+
+        void clear() {
+            values.clear();
+        }
+
+        String getStats() {
+            var hitCount = hits.sum();
+            var requests = hitCount + misses.sum();
+            return name + "=" + values.size()
+                    + ", hits=" + hitCount
+                    + ", misses=" + (requests - hitCount)
+                    + ", hitRatio=" + (requests > 0 ? hitCount * 100 / requests : 0) + "%";
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package ru.valeo.jim.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Currency;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.InstrumentCategory;
+import ru.valeo.jim.domain.InstrumentPosition;
+import ru.valeo.jim.domain.InstrumentType;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.domain.OperationType;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.dto.GeneratedDatasetDto;
+import ru.valeo.jim.repository.InstrumentRepository;
+import ru.valeo.jim.repository.PortfolioRepository;
+import ru.valeo.jim.service.util.SequenceIdAllocator;
+
+/** Fills database with synthetic portfolios, instruments, operations and prices for load testing.
+ * Operations are generated in memory and applied by OperationsProcessor, so available money and positions
+ * are the same as after processing of operations log: money and amounts never get negative.
+ * Rows are written by JDBC batches of app.importBatchSize, each batch in its own transaction. */
+@RequiredArgsConstructor
+@Service
+public class SyntheticDatasetGenerator {
+
+    private static final String CURRENCY = "USD";
+    /** Categories of seed data with target percents of generated portfolios. */
+    private static final String[] CATEGORIES = {"SHR", "GOVB", "CORPB", "ETFSHR", "ETFB", "ETFGLD"};
+    private static final int[] TARGET_PERCENTS = {40, 20, 20, 10, 5, 5};
+    private static final BigDecimal BOND_PAR_VALUE = BigDecimal.valueOf(1000);
+    /** Half-year coupon, percent of par value. */
+    private static final BigDecimal BOND_COUPON_PERCENT = BigDecimal.valueOf(4);
+    private static final long HISTORY_DAYS = 3 * 365;
+    private static final int MAX_BUY_AMOUNT = 100;
+    private static final int PRICE_SCALE = 2;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private static final String INSERT_INSTRUMENT_SQL = "insert into instrument " +
+            "(symbol, name, currency_id, type, category_id, isin, bond_par_value) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_PRICE_SQL = "insert into instrument_price " +
+            "(id, instrument_id, price, accumulated_coupon_income, when_add) values (?, ?, ?, ?, ?)";
+    private static final String INSERT_PORTFOLIO_SQL = "insert into portfolio " +
+            "(name, currency_id, version, available_money) values (?, ?, 0, 0)";
+    private static final String UPDATE_PORTFOLIO_SQL = "update portfolio set available_money = ? where name = ?";
+    private static final String INSERT_TARGET_DISTRIBUTION_SQL = "insert into instrument_category_target_distribution " +
+            "(id, portfolio_id, category_id, percent) values (?, ?, ?, ?)";
+    private static final String INSERT_OPERATION_SQL = "insert into operation " +
+            "(id, type, portfolio_id, instrument_id, amount, price, accumulated_coupon_income, percent, deleted, processed, when_add) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_POSITION_SQL = "insert into instrument_position " +
+            "(id, version, portfolio_id, instrument_id, amount, accounting_price, exclude_from_distribution, " +
+            "buy_total_price, sell_total_price) values (?, 0, ?, ?, ?, ?, false, ?, ?)";
+
+    private final ApplicationConfig applicationConfig;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final SequenceIdAllocator sequenceIdAllocator;
+    private final OperationsProcessor operationsProcessor;
+    private final PortfolioRepository portfolioRepository;
+    private final InstrumentRepository instrumentRepository;
+
+    /** Generate dataset, names of portfolios and symbols of instruments start with prefix.
+     * @param operationsPerPortfolio - count of operations of every portfolio in last 3 years
+     * @param pricesPerInstrument - count of prices of every instrument evenly distributed in last 3 years
+     * @param seed - the same seed and counts give the same data
+     * @throws IllegalArgumentException - if count is negative or dataset with prefix exists */
+    public GeneratedDatasetDto generate(@NotNull String prefix, int portfolios, int instruments,
+                                        int operationsPerPortfolio, int pricesPerInstrument, long seed) {
+        if (portfolios < 0 || instruments < 1 || operationsPerPortfolio < 0 || pricesPerInstrument < 0) {
+            throw new IllegalArgumentException("Expected at least 1 instrument and not negative counts");
+        }
+        if (instrumentRepository.existsById(symbol(prefix, 0)) || portfolioRepository.existsById(portfolioName(prefix, 0))) {
+            throw new IllegalArgumentException("Dataset with prefix " + prefix + " already exists");
+        }
+        var result = new GeneratedDatasetDto();
+        var start = System.currentTimeMillis();
+        var random = new Random(seed);
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var to = LocalDate.now().atStartOfDay();
+        var history = new History(to.minusDays(HISTORY_DAYS), to);
+
+        Map<String, PriceSeries> prices = new LinkedHashMap<>();
+        for (var instrument : createInstruments(prefix, instruments)) {
+            prices.put(instrument.getSymbol(),
+                    new PriceSeries(instrument, history, Math.max(pricesPerInstrument, 1), random));
+        }
+        insertInstruments(transactionTemplate, prices, pricesPerInstrument, result);
+
+        for (var i = 0; i < portfolios; i++) {
+            var portfolio = new Portfolio()
+                    .setName(portfolioName(prefix, i))
+                    .setCurrency(new Currency().setCode(CURRENCY))
+                    .setPositions(new ArrayList<>());
+            jdbcTemplate.update(INSERT_PORTFOLIO_SQL, portfolio.getName(), CURRENCY);
+            insertOperations(transactionTemplate, portfolio, prices, history, operationsPerPortfolio,
+                    new Random(random.nextLong()), result);
+            insertPortfolioState(transactionTemplate, portfolio, result);
+            result.setPortfolios(result.getPortfolios() + 1);
+        }
+
+        result.setDurationMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private static String symbol(String prefix, int index) {
+        return prefix + index;
+    }
+
+    private static String portfolioName(String prefix, int index) {
+        return prefix + "-P" + index;
+    }
+
+    /** Instruments: 50% shares, 30% bonds and 20% ETF. */
+    private static List<Instrument> createInstruments(String prefix, int count) {
+        var currency = new Currency().setCode(CURRENCY);
+        List<Instrument> instruments = new ArrayList<>(count);
+        for (var i = 0; i < count; i++) {
+            var instrument = new Instrument()
+                    .setSymbol(symbol(prefix, i))
+                    .setBaseCurrency(currency);
+            var kind = i % 10;
+            if (kind < 5) {
+                instrument.setType(InstrumentType.SHARE).setName("Synthetic share " + i)
+                        .setCategory(new InstrumentCategory().setCode("SHR"));
+            } else if (kind < 8) {
+                instrument.setType(InstrumentType.BOND).setName("Synthetic bond " + i)
+                        .setCategory(new InstrumentCategory().setCode(kind == 5 ? "GOVB" : "CORPB"))
+                        .setIsin(String.format("XS%010d", i))
+                        .setBondParValue(BOND_PAR_VALUE);
+            } else {
+                instrument.setType(InstrumentType.ETF).setName("Synthetic ETF " + i)
+                        .setCategory(new InstrumentCategory().setCode(CATEGORIES[3 + i % 3]));
+            }
+            instruments.add(instrument);
+        }
+        return instruments;
+    }
+
+    private void insertInstruments(TransactionTemplate transactionTemplate, Map<String, PriceSeries> prices,
+                                   int pricesPerInstrument, GeneratedDatasetDto result) {
+        List<Object[]> rows = new ArrayList<>();
+        for (var series : prices.values()) {
+            var instrument = series.instrument;
+            rows.add(new Object[]{instrument.getSymbol(), instrument.getName(), CURRENCY, instrument.getType().name(),
+                    instrument.getCategory().getCode(), instrument.getIsin(), instrument.getBondParValue()});
+            if (rows.size() >= applicationConfig.getImportBatchSize()) {
+                insertBatch(transactionTemplate, INSERT_INSTRUMENT_SQL, rows);
+            }
+        }
+        insertBatch(transactionTemplate, INSERT_INSTRUMENT_SQL, rows);
+        result.setInstruments(prices.size());
+
+        for (var series : prices.values()) {
+            for (var i = 0; i < pricesPerInstrument; i++) {
+                rows.add(new Object[]{null, series.instrument.getSymbol(), series.price(i),
+                        series.accumulatedCouponIncome(i), Timestamp.valueOf(series.whenAdd(i))});
+                if (rows.size() >= applicationConfig.getImportBatchSize()) {
+                    result.setPrices(result.getPrices() + insertBatch(transactionTemplate, INSERT_PRICE_SQL,
+                            "instrument_price_seq", rows));
+                }
+            }
+        }
+        result.setPrices(result.getPrices() + insertBatch(transactionTemplate, INSERT_PRICE_SQL,
+                "instrument_price_seq", rows));
+    }
+
+    private void insertOperations(TransactionTemplate transactionTemplate, Portfolio portfolio,
+                                  Map<String, PriceSeries> prices, History history, int count, Random random,
+                                  GeneratedDatasetDto result) {
+        var step = history.getStep(count);
+        List<PriceSeries> series = new ArrayList<>(prices.values());
+        List<Object[]> rows = new ArrayList<>();
+        for (var i = 0; i < count; i++) {
+            var whenAdd = history.from.plus(step.multipliedBy(i));
+            var operation = createOperation(portfolio, series, prices, whenAdd, i == 0, random);
+            operationsProcessor.apply(operation);
+            rows.add(new Object[]{null, operation.getType().name(), portfolio.getName(),
+                    operation.getInstrument() == null ? null : operation.getInstrument().getSymbol(),
+                    operation.getAmount(), operation.getPrice(), operation.getAccumulatedCouponIncome(),
+                    operation.getPercent(), false, true, Timestamp.valueOf(whenAdd)});
+            if (rows.size() >= applicationConfig.getImportBatchSize()) {
+                result.setOperations(result.getOperations() + insertBatch(transactionTemplate, INSERT_OPERATION_SQL,
+                        "operation_seq", rows));
+            }
+        }
+        result.setOperations(result.getOperations() + insertBatch(transactionTemplate, INSERT_OPERATION_SQL,
+                "operation_seq", rows));
+    }
+
+    /** Insert positions and target distribution, update available money of portfolio. */
+    private void insertPortfolioState(TransactionTemplate transactionTemplate, Portfolio portfolio,
+                                      GeneratedDatasetDto result) {
+        List<Object[]> rows = new ArrayList<>();
+        for (var position : portfolio.getPositions()) {
+            rows.add(new Object[]{null, portfolio.getName(), position.getInstrument().getSymbol(), position.getAmount(),
+                    position.getAccountingPrice(), position.getBuyTotalPrice(), position.getSellTotalPrice()});
+        }
+        result.setPositions(result.getPositions() + insertBatch(transactionTemplate, INSERT_POSITION_SQL,
+                "instrument_position_seq", rows));
+        for (var i = 0; i < CATEGORIES.length; i++) {
+            rows.add(new Object[]{null, portfolio.getName(), CATEGORIES[i], BigDecimal.valueOf(TARGET_PERCENTS[i])});
+        }
+        insertBatch(transactionTemplate, INSERT_TARGET_DISTRIBUTION_SQL, "instrument_category_target_distribution_seq",
+                rows);
+        jdbcTemplate.update(UPDATE_PORTFOLIO_SQL, portfolio.getAvailableMoney(), portfolio.getName());
+    }
+
+    /** Operation which can be applied to current state of portfolio, first operation adds money. */
+    private Operation createOperation(Portfolio portfolio, List<PriceSeries> series, Map<String, PriceSeries> prices,
+                                      LocalDateTime whenAdd, boolean first, Random random) {
+        var operation = new Operation().setPortfolio(portfolio).setWhenAdd(whenAdd);
+        var money = portfolio.getAvailableMoney();
+        var kind = first ? 100 : random.nextInt(100);
+        if (kind < 45) {
+            var instrumentPrices = series.get(random.nextInt(series.size()));
+            var price = instrumentPrices.priceAt(whenAdd);
+            var accumulatedCouponIncome = instrumentPrices.accumulatedCouponIncomeAt(whenAdd);
+            var maxAmount = money.subtract(accumulatedCouponIncome).divide(price, 0, RoundingMode.FLOOR)
+                    .min(BigDecimal.valueOf(MAX_BUY_AMOUNT)).intValue();
+            if (maxAmount > 0) {
+                return setTrade(operation.setType(OperationType.BUY), instrumentPrices, whenAdd)
+                        .setAmount(1 + random.nextInt(maxAmount));
+            }
+        } else if (kind < 65) {
+            var position = findPosition(portfolio, p -> true, random);
+            if (position != null) {
+                var instrumentPrices = prices.get(position.getInstrument().getSymbol());
+                var price = instrumentPrices.priceAt(whenAdd);
+                var amount = 1 + random.nextInt(position.getAmount());
+                var remainingCost = position.getBuyTotalPrice().subtract(position.getSellTotalPrice())
+                        .subtract(price.multiply(BigDecimal.valueOf(amount)));
+                if (amount < position.getAmount() && remainingCost.signum() < 0) {
+                    // accounting price of the rest would get negative, sell all
+                    amount = position.getAmount();
+                }
+                return setTrade(operation.setType(OperationType.SELL), instrumentPrices, whenAdd).setAmount(amount);
+            }
+        } else if (kind < 75) {
+            var position = findPosition(portfolio,
+                    p -> InstrumentType.typesWithDividend().contains(p.getInstrument().getType()), random);
+            if (position != null) {
+                var price = prices.get(position.getInstrument().getSymbol()).priceAt(whenAdd);
+                return operation.setType(OperationType.DIVIDEND)
+                        .setInstrument(position.getInstrument())
+                        .setAmount(position.getAmount())
+                        .setPrice(price.multiply(BigDecimal.valueOf(2 + random.nextInt(5)))
+                                .divide(HUNDRED, PRICE_SCALE, RoundingMode.FLOOR));
+            }
+        } else if (kind < 83) {
+            var position = findPosition(portfolio,
+                    p -> InstrumentType.typesWithCoupon().contains(p.getInstrument().getType()), random);
+            if (position != null) {
+                return operation.setType(OperationType.COUPON)
+                        .setInstrument(position.getInstrument())
+                        .setAmount(position.getAmount())
+                        .setPrice(BOND_PAR_VALUE.multiply(BOND_COUPON_PERCENT).divide(HUNDRED, PRICE_SCALE,
+                                RoundingMode.FLOOR));
+            }
+        } else if (kind < 88) {
+            var value = money.multiply(BigDecimal.valueOf(random.nextInt(3))).divide(HUNDRED, PRICE_SCALE,
+                    RoundingMode.FLOOR);
+            if (value.signum() > 0) {
+                return operation.setType(OperationType.TAX).setPrice(value);
+            }
+        } else if (kind < 93) {
+            var value = money.multiply(BigDecimal.valueOf(random.nextInt(10))).divide(HUNDRED, PRICE_SCALE,
+                    RoundingMode.FLOOR);
+            if (value.signum() > 0) {
+                return operation.setType(OperationType.WITHDRAW_MONEY).setPrice(value);
+            }
+        }
+        return operation.setType(OperationType.ADD_MONEY)
+                .setPrice(BigDecimal.valueOf(1000 + random.nextInt(100_000)));
+    }
+
+    /** Set instrument, price and for bonds percent and accumulated coupon income of buy or sell. */
+    private static Operation setTrade(Operation operation, PriceSeries series, LocalDateTime whenAdd) {
+        operation.setInstrument(series.instrument).setPrice(series.priceAt(whenAdd));
+        if (InstrumentType.typesWithCoupon().contains(series.instrument.getType())) {
+            operation.setPercent(series.priceAt(whenAdd).multiply(HUNDRED)
+                            .divide(BOND_PAR_VALUE, PRICE_SCALE, RoundingMode.FLOOR))
+                    .setAccumulatedCouponIncome(series.accumulatedCouponIncomeAt(whenAdd));
+        }
+        return operation;
+    }
+
+    /** Find random position with not zero amount matching predicate. */
+    private static InstrumentPosition findPosition(Portfolio portfolio, Predicate<InstrumentPosition> predicate,
+                                                   Random random) {
+        var positions = portfolio.getPositions();
+        if (positions.isEmpty()) {
+            return null;
+        }
+        var start = random.nextInt(positions.size());
+        for (var i = 0; i < positions.size(); i++) {
+            var position = positions.get((start + i) % positions.size());
+            if (position.getAmount() > 0 && predicate.test(position)) {
+                return position;
+            }
+        }
+        return null;
+    }
+
+    /** Insert rows without ids in separate transaction, ids are allocated from sequence and set to first column. */
+    private long insertBatch(TransactionTemplate transactionTemplate, String sql, String sequence, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        var ids = sequenceIdAllocator.allocate(sequence, rows.size());
+        for (var i = 0; i < rows.size(); i++) {
+            rows.get(i)[0] = ids[i];
+        }
+        return insertBatch(transactionTemplate, sql, rows);
+    }
+
+    /** Insert rows in separate transaction and clear them. */
+    private int insertBatch(TransactionTemplate transactionTemplate, String sql, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, rows));
+        var count = rows.size();
+        rows.clear();
+        return count;
+    }
+
+    /** Period of generated prices and operations. */
+    private static class History {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+
+        History(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /** Step of count events evenly distributed in history. */
+        Duration getStep(int count) {
+            return Duration.between(from, to).dividedBy(Math.max(count, 1));
+        }
+    }
+
+    /** Random walk of instrument price with daily changes up to 2%, bonds stay from 80% to 120% of par value. */
+    private static class PriceSeries {
+        private final Instrument instrument;
+        private final History history;
+        private final Duration step;
+        private final long[] unscaledPrices;
+
+        PriceSeries(Instrument instrument, History history, int count, Random random) {
+            this.instrument = instrument;
+            this.history = history;
+            this.step = history.getStep(count);
+            this.unscaledPrices = new long[count];
+            var isBond = InstrumentType.typesWithCoupon().contains(instrument.getType());
+            // bond price is in percent of par value until the end
+            var price = isBond ? 95 + random.nextDouble() * 10 : 10 + random.nextDouble() * 490;
+            for (var i = 0; i < count; i++) {
+                price *= 1 + (random.nextDouble() - 0.5) * 0.04;
+                if (isBond) {
+                    price = Math.min(Math.max(price, 80), 120);
+                }
+                var money = isBond ? price * BOND_PAR_VALUE.doubleValue() / 100 : Math.max(price, 0.01);
+                unscaledPrices[i] = Math.round(money * 100);
+            }
+        }
+
+        LocalDateTime whenAdd(int index) {
+            return history.from.plus(step.multipliedBy(index));
+        }
+
+        BigDecimal price(int index) {
+            return BigDecimal.valueOf(unscaledPrices[index], PRICE_SCALE);
+        }
+
+        /** Coupon income is accumulated linearly during half of year. */
+        BigDecimal accumulatedCouponIncome(int index) {
+            if (!InstrumentType.typesWithCoupon().contains(instrument.getType())) {
+                return BigDecimal.ZERO;
+            }
+            var dayOfHalfYear = Duration.between(history.from, whenAdd(index)).toDays() % 182;
+            return BOND_PAR_VALUE.multiply(BOND_COUPON_PERCENT).multiply(BigDecimal.valueOf(dayOfHalfYear))
+                    .divide(BigDecimal.valueOf(182 * 100), PRICE_SCALE, RoundingMode.FLOOR);
+        }
+
+        BigDecimal priceAt(LocalDateTime date) {
+            return price(indexAt(date));
+        }
+
+        BigDecimal accumulatedCouponIncomeAt(LocalDateTime date) {
+            return accumulatedCouponIncome(indexAt(date));
+        }
+
+        /** Index of last price at or before date, first price for earlier dates. */
+        private int indexAt(LocalDateTime date) {
+            var index = Duration.between(history.from, date).toMillis() / Math.max(step.toMillis(), 1);
+            return (int) Math.min(Math.max(index, 0), unscaledPrices.length - 1);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import ru.valeo.jim.domain.InstrumentType;
 import ru.valeo.jim.repository.CurrencyRepository;
 import ru.valeo.jim.repository.InstrumentCategoryRepository;
 import ru.valeo.jim.service.DictionariesService;
+import ru.valeo.jim.service.ReferenceDataCache;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
@@ -22,6 +23,7 @@ public class DictionariesServiceImpl implements DictionariesService {
 
     private final CurrencyRepository currencyRepository;
     private final InstrumentCategoryRepository instrumentCategoryRepository;
+    private final ReferenceDataCache referenceDataCache;
 
     @Transactional(readOnly = true)
     @Override
@@ -36,6 +38,7 @@ public class DictionariesServiceImpl implements DictionariesService {
             .setCode(code)
             .setName(name)
             .setNumber(number);
+        referenceDataCache.evictCurrency(code);
         return currencyRepository.save(currency);
     }
 
@@ -45,6 +48,7 @@ public class DictionariesServiceImpl implements DictionariesService {
         var currencyOpt = currencyRepository.findById(code);
         if (currencyOpt.isPresent()) {
             currencyRepository.delete(currencyOpt.get());
+            referenceDataCache.evictCurrency(code);
             return true;
         } else {
             return false;
@@ -63,6 +67,7 @@ public class DictionariesServiceImpl implements DictionariesService {
         var category = instrumentCategoryRepository.findById(code).orElse(new InstrumentCategory())
             .setCode(code)
             .setName(name);
+        referenceDataCache.evictCategory(code);
         return instrumentCategoryRepository.save(category);
     }
 
@@ -72,6 +77,7 @@ public class DictionariesServiceImpl implements DictionariesService {
         var instrumentCategoryOpt = instrumentCategoryRepository.findById(code);
         if (instrumentCategoryOpt.isPresent()) {
             instrumentCategoryRepository.delete(instrumentCategoryOpt.get());
+            referenceDataCache.evictCategory(code);
             return true;
         } else {
             return false;
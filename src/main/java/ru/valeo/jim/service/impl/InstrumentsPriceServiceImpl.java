@@ -1,63 +1,93 @@
 package ru.valeo.jim.service.impl;
 
 import lombok.AllArgsConstructor;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Instrument;
 import ru.valeo.jim.domain.InstrumentPrice;
 import ru.valeo.jim.domain.InstrumentType;
+import ru.valeo.jim.dto.ImportResultDto;
 import ru.valeo.jim.dto.InstrumentPriceDto;
 import ru.valeo.jim.exception.InstrumentNotFoundException;
 import ru.valeo.jim.exception.UnsupportedInstrumentTypeException;
 import ru.valeo.jim.repository.InstrumentPriceRepository;
 import ru.valeo.jim.repository.InstrumentRepository;
+import ru.valeo.jim.service.InstrumentPriceCache;
 import ru.valeo.jim.service.InstrumentsPriceService;
+import ru.valeo.jim.service.ReferenceDataCache;
+import ru.valeo.jim.service.util.DateTimeHelper;
+import ru.valeo.jim.service.util.SequenceIdAllocator;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
+import static java.util.Optional.ofNullable;
 
 @AllArgsConstructor
 @Service
 public class InstrumentsPriceServiceImpl implements InstrumentsPriceService {
 
+    private static final String CSV_HEADER_PREFIX = "symbol";
+    private static final String INSERT_PRICE_SQL = "insert into instrument_price " +
+            "(id, instrument_id, price, accumulated_coupon_income, when_add) values (?, ?, ?, ?, ?)";
+    private static final String PRICE_SEQUENCE = "instrument_price_seq";
+
     private final InstrumentPriceRepository instrumentPriceRepository;
     private final InstrumentRepository instrumentRepository;
     private final ApplicationConfig applicationConfig;
+    private final InstrumentPriceCache instrumentPriceCache;
+    private final DateTimeHelper dateTimeHelper;
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIdAllocator sequenceIdAllocator;
+    private final PlatformTransactionManager transactionManager;
+    private final ReferenceDataCache referenceDataCache;
 
     @Transactional
     @Override
     public InstrumentPriceDto addPrice(@NotNull InstrumentPriceDto dto) {
-        var instrument = instrumentRepository.findById(dto.getSymbol())
+        var instrument = referenceDataCache.findInstrument(dto.getSymbol())
                 .orElseThrow(() -> new InstrumentNotFoundException(dto.getSymbol()));
 
         var data = new InstrumentPrice();
         data.setInstrument(instrument);
-        if (dto.isPercent()) {
-            validateInstrumentType(instrument.getType(), InstrumentType.typesWithCoupon());
-            data.setPrice(instrument.getBondParValue().multiply(dto.getPrice())
-                    .divide(BigDecimal.valueOf(100), applicationConfig.getBigdecimalOperationsScale(), RoundingMode.FLOOR));
-        } else {
-            data.setPrice(dto.getPrice());
-        }
+        data.setPrice(calcPrice(instrument, dto.getPrice(), dto.isPercent()));
         data.setAccumulatedCouponIncome(dto.getAccumulatedCouponIncome());
         data.setWhenAdd(nonNull(dto.getWhenAdd()) ? dto.getWhenAdd() : LocalDateTime.now());
 
-        return InstrumentPriceDto.from(instrumentPriceRepository.save(data));
+        data = instrumentPriceRepository.save(data);
+        instrumentPriceCache.add(data);
+        return InstrumentPriceDto.from(data);
     }
 
     @Transactional(readOnly = true)
     @Override
     public List<InstrumentPriceDto> get(@NotBlank String symbol) {
-        var instrument = instrumentRepository.findById(symbol)
+        var instrument = referenceDataCache.findInstrument(symbol)
                 .orElseThrow(() -> new InstrumentNotFoundException(symbol));
         return instrumentPriceRepository.findByInstrument(instrument)
                 .stream()
@@ -66,6 +96,103 @@ public class InstrumentsPriceServiceImpl implements InstrumentsPriceService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public ImportResultDto importPrices(@NotNull Reader source) {
+        var result = new ImportResultDto();
+        var start = System.currentTimeMillis();
+        var instruments = instrumentRepository.findAll().stream()
+                .collect(Collectors.toMap(Instrument::getSymbol, Function.identity()));
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var batchSize = applicationConfig.getImportBatchSize();
+        Map<Long, Object[]> batch = new LinkedHashMap<>();
+        Set<String> symbols = new HashSet<>();
+
+        try (var reader = new BufferedReader(source)) {
+            String line;
+            long lineNumber = 0;
+            while (nonNull(line = reader.readLine())) {
+                lineNumber++;
+                if (!StringUtils.hasText(line) || (lineNumber == 1 && line.startsWith(CSV_HEADER_PREFIX))) {
+                    continue;
+                }
+                try {
+                    var row = parsePriceRow(line, instruments);
+                    batch.put(lineNumber, row);
+                    symbols.add((String) row[0]);
+                } catch (RuntimeException e) {
+                    result.addError(lineNumber, e.getMessage());
+                }
+                if (batch.size() >= batchSize) {
+                    insertPrices(transactionTemplate, batch, symbols, result);
+                }
+            }
+            insertPrices(transactionTemplate, batch, symbols, result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        result.setDurationMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /** Parse CSV line to insert statement parameters. */
+    private Object[] parsePriceRow(String line, Map<String, Instrument> instruments) {
+        var columns = line.split(",", -1);
+        if (columns.length < 2) {
+            throw new IllegalArgumentException("Expected at least 2 columns: " + line);
+        }
+        var symbol = columns[0].trim();
+        var instrument = ofNullable(instruments.get(symbol))
+                .orElseThrow(() -> new InstrumentNotFoundException(symbol));
+        var priceValue = columns[1].trim();
+        var isPercent = priceValue.endsWith("%");
+        var price = calcPrice(instrument,
+                new BigDecimal(isPercent ? priceValue.substring(0, priceValue.length() - 1) : priceValue),
+                isPercent);
+        var accumulatedCouponIncome = columns.length > 2 && StringUtils.hasText(columns[2])
+                ? new BigDecimal(columns[2].trim()) : BigDecimal.ZERO;
+        var whenAdd = columns.length > 3 ? dateTimeHelper.parse(columns[3].trim()) : null;
+        return new Object[]{symbol, price, accumulatedCouponIncome,
+                Timestamp.valueOf(isNull(whenAdd) ? LocalDateTime.now() : whenAdd)};
+    }
+
+    /** Insert batch of prices by line numbers in separate transaction and clear it.
+     * If batch fails in database, it's reported as a whole, previous batches stay imported. */
+    private void insertPrices(TransactionTemplate transactionTemplate, Map<Long, Object[]> batch, Set<String> symbols,
+                              ImportResultDto result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                var ids = sequenceIdAllocator.allocate(PRICE_SEQUENCE, batch.size());
+                List<Object[]> rows = new ArrayList<>(batch.size());
+                for (var row : batch.values()) {
+                    rows.add(new Object[]{ids[rows.size()], row[0], row[1], row[2], row[3]});
+                }
+                jdbcTemplate.batchUpdate(INSERT_PRICE_SQL, rows);
+            });
+            symbols.forEach(instrumentPriceCache::evict);
+            result.setImported(result.getImported() + batch.size());
+        } catch (RuntimeException e) {
+            var lineNumbers = new ArrayList<>(batch.keySet());
+            result.addChunkError(lineNumbers.get(0), lineNumbers.get(lineNumbers.size() - 1), batch.size(),
+                    NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+        }
+        batch.clear();
+        symbols.clear();
+    }
+
+    /** Get price in money, for bonds price can be set in percent of par value. */
+    private BigDecimal calcPrice(Instrument instrument, BigDecimal price, boolean isPercent) {
+        if (isPercent) {
+            validateInstrumentType(instrument.getType(), InstrumentType.typesWithCoupon());
+            return instrument.getBondParValue().multiply(price)
+                    .divide(BigDecimal.valueOf(100), applicationConfig.getBigdecimalOperationsScale(), RoundingMode.FLOOR);
+        }
+        return price;
+    }
+
     private void validateInstrumentType(InstrumentType type, Set<InstrumentType> availableTypes) {
         if (!availableTypes.contains(type))
             throw new UnsupportedInstrumentTypeException(type.name());
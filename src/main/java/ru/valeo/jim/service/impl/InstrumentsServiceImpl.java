@@ -9,10 +9,10 @@ import ru.valeo.jim.dto.BondDto;
 import ru.valeo.jim.dto.InstrumentDto;
 import ru.valeo.jim.exception.CurrencyNotFoundException;
 import ru.valeo.jim.exception.InstrumentCategoryNotFoundException;
-import ru.valeo.jim.repository.CurrencyRepository;
-import ru.valeo.jim.repository.InstrumentCategoryRepository;
 import ru.valeo.jim.repository.InstrumentRepository;
+import ru.valeo.jim.service.InstrumentPriceCache;
 import ru.valeo.jim.service.InstrumentsService;
+import ru.valeo.jim.service.ReferenceDataCache;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
@@ -24,8 +24,8 @@ import java.util.stream.Collectors;
 public class InstrumentsServiceImpl implements InstrumentsService {
 
     private final InstrumentRepository instrumentRepository;
-    private final InstrumentCategoryRepository instrumentCategoryRepository;
-    private final CurrencyRepository currencyRepository;
+    private final InstrumentPriceCache instrumentPriceCache;
+    private final ReferenceDataCache referenceDataCache;
 
     @Transactional(readOnly = true)
     @Override
@@ -43,9 +43,9 @@ public class InstrumentsServiceImpl implements InstrumentsService {
     @Transactional
     @Override
     public InstrumentDto save(@NotNull InstrumentDto dto) {
-        var currency = currencyRepository.findById(dto.getBaseCurrencyCode())
+        var currency = referenceDataCache.findCurrency(dto.getBaseCurrencyCode())
                 .orElseThrow(() -> new CurrencyNotFoundException(dto.getBaseCurrencyCode()));
-        var category = instrumentCategoryRepository.findById(dto.getCategoryCode())
+        var category = referenceDataCache.findCategory(dto.getCategoryCode())
                 .orElseThrow(() -> new InstrumentCategoryNotFoundException(dto.getCategoryCode()));
         var type = InstrumentType.findByName(dto.getType());
 
@@ -57,14 +57,15 @@ public class InstrumentsServiceImpl implements InstrumentsService {
             .setType(type)
             .setIsin(dto.getIsin());
 
+        referenceDataCache.evictInstrument(dto.getSymbol());
         return InstrumentDto.from(instrumentRepository.save(instrument));
     }
 
     @Override
     public BondDto save(@NotNull BondDto dto) {
-        var currency = currencyRepository.findById(dto.getBaseCurrencyCode())
+        var currency = referenceDataCache.findCurrency(dto.getBaseCurrencyCode())
                 .orElseThrow(() -> new CurrencyNotFoundException(dto.getBaseCurrencyCode()));
-        var category = instrumentCategoryRepository.findById(dto.getCategoryCode())
+        var category = referenceDataCache.findCategory(dto.getCategoryCode())
                 .orElseThrow(() -> new InstrumentCategoryNotFoundException(dto.getCategoryCode()));
 
         var instrument = instrumentRepository.findById(dto.getSymbol()).orElseGet(Instrument::new)
@@ -76,6 +77,7 @@ public class InstrumentsServiceImpl implements InstrumentsService {
             .setIsin(dto.getIsin())
             .setBondParValue(dto.getParValue());
 
+        referenceDataCache.evictInstrument(dto.getSymbol());
         return BondDto.from(instrumentRepository.save(instrument));
     }
 
@@ -85,6 +87,8 @@ public class InstrumentsServiceImpl implements InstrumentsService {
         var instrumentOpt = instrumentRepository.findById(symbol);
         if (instrumentOpt.isPresent()) {
             instrumentRepository.delete(instrumentOpt.get());
+            instrumentPriceCache.evict(symbol);
+            referenceDataCache.evictInstrument(symbol);
             return true;
         } else {
             return false;
@@ -1,24 +1,45 @@
 package ru.valeo.jim.service.impl;
 
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolationException;
 import javax.validation.constraints.NotNull;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import ru.valeo.jim.config.ApplicationConfig;
 import ru.valeo.jim.domain.Instrument;
-import ru.valeo.jim.domain.InstrumentPosition;
 import ru.valeo.jim.domain.InstrumentType;
 import ru.valeo.jim.domain.Operation;
 import ru.valeo.jim.domain.OperationType;
 import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.dto.ImportResultDto;
 import ru.valeo.jim.dto.operation.AddMoneyDto;
 import ru.valeo.jim.dto.operation.BondRedemptionDto;
 import ru.valeo.jim.dto.operation.BuyBondDto;
@@ -27,6 +48,7 @@ import ru.valeo.jim.dto.operation.CouponDto;
 import ru.valeo.jim.dto.operation.DividendDto;
 import ru.valeo.jim.dto.operation.InstrumentConversionDto;
 import ru.valeo.jim.dto.operation.OperationDto;
+import ru.valeo.jim.dto.operation.OperationImportRowDto;
 import ru.valeo.jim.dto.operation.SellBondDto;
 import ru.valeo.jim.dto.operation.SellInstrumentDto;
 import ru.valeo.jim.dto.operation.TaxDto;
@@ -35,67 +57,311 @@ import ru.valeo.jim.exception.InstrumentNotFoundException;
 import ru.valeo.jim.exception.InstrumentPositionNotFoundException;
 import ru.valeo.jim.exception.InsufficientAmountException;
 import ru.valeo.jim.exception.InsufficientMoneyException;
+import ru.valeo.jim.exception.OperationNotFoundException;
 import ru.valeo.jim.exception.PortfolioNotFoundException;
 import ru.valeo.jim.exception.UnsupportedInstrumentTypeException;
 import ru.valeo.jim.repository.InstrumentRepository;
 import ru.valeo.jim.repository.OperationRepository;
 import ru.valeo.jim.repository.PortfolioRepository;
+import ru.valeo.jim.repository.PortfolioSnapshotRepository;
+import ru.valeo.jim.service.OperationsProcessor;
+import ru.valeo.jim.service.PortfolioLockManager;
+import ru.valeo.jim.service.PortfolioRebuildHelper;
+import ru.valeo.jim.service.PortfolioWriteQueue;
+import ru.valeo.jim.service.ReferenceDataCache;
 import ru.valeo.jim.service.OperationsService;
+import ru.valeo.jim.service.jfr.AccountingPriceEvent;
+import ru.valeo.jim.service.jfr.OperationProcessedEvent;
+import ru.valeo.jim.service.util.DateTimeHelper;
+import ru.valeo.jim.service.util.SequenceIdAllocator;
 
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Optional.ofNullable;
 
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Service
 public class OperationsServiceImpl implements OperationsService {
 
+    private static final String CSV_HEADER_PREFIX = "type";
+    private static final String INSERT_OPERATION_SQL = "insert into operation " +
+            "(id, type, portfolio_id, instrument_id, amount, price, accumulated_coupon_income, percent, deleted, processed, when_add) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String OPERATION_SEQUENCE = "operation_seq";
+
+    private static final Map<Class<? extends OperationDto>, Function<Operation, OperationDto>> FROM_OPERATION =
+            Map.ofEntries(
+                    Map.entry(AddMoneyDto.class, AddMoneyDto::from),
+                    Map.entry(WithdrawMoneyDto.class, WithdrawMoneyDto::from),
+                    Map.entry(BuyInstrumentDto.class, BuyInstrumentDto::from),
+                    Map.entry(BuyBondDto.class, BuyBondDto::from),
+                    Map.entry(SellInstrumentDto.class, SellInstrumentDto::from),
+                    Map.entry(SellBondDto.class, SellBondDto::from),
+                    Map.entry(DividendDto.class, DividendDto::from),
+                    Map.entry(CouponDto.class, CouponDto::from),
+                    Map.entry(TaxDto.class, TaxDto::from),
+                    Map.entry(BondRedemptionDto.class, BondRedemptionDto::from),
+                    Map.entry(InstrumentConversionDto.class, InstrumentConversionDto::from));
+
     private final ApplicationConfig applicationConfig;
     private final OperationRepository operationRepository;
     private final PortfolioRepository portfolioRepository;
     private final InstrumentRepository instrumentRepository;
+    private final DateTimeHelper dateTimeHelper;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final OperationsProcessor operationsProcessor;
+    private final PortfolioSnapshotRepository snapshotRepository;
+    private final PortfolioRebuildHelper rebuildHelper;
+    private final PortfolioLockManager lockManager;
+    private final SequenceIdAllocator sequenceIdAllocator;
+    private final ReferenceDataCache referenceDataCache;
+    private PortfolioWriteQueue<OperationDto> writeQueue;
+
+    @PostConstruct
+    void init() {
+        writeQueue = new PortfolioWriteQueue<>(applicationConfig.getIngestionWriters(),
+                applicationConfig.getImportBatchSize(), this::writeQueued);
+    }
+
+    @PreDestroy
+    void destroy() {
+        writeQueue.shutdown(Duration.ofMillis(applicationConfig.getIngestionShutdownTimeoutMillis()));
+    }
 
-    @Transactional
     @Override
     public AddMoneyDto addMoney(@NotNull AddMoneyDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var operation = new Operation()
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createAddMoneyOperation(loadPortfolio(dto.getPortfolioName()), dto);
+            processOperation(operation);
+            return AddMoneyDto.from(operation);
+        });
+    }
+
+    @Override
+    public WithdrawMoneyDto withdrawMoney(@NotNull WithdrawMoneyDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createWithdrawMoneyOperation(loadPortfolio(dto.getPortfolioName()), dto);
+            processOperation(operation);
+            return WithdrawMoneyDto.from(operation);
+        });
+    }
+
+    @Override
+    public BuyInstrumentDto buyInstrument(@NotNull BuyInstrumentDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createBuyInstrumentOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return BuyInstrumentDto.from(operation);
+        });
+    }
+
+    @Override
+    public BuyBondDto buyBond(@NotNull BuyBondDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createBuyBondOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return BuyBondDto.from(operation);
+        });
+    }
+
+    @Override
+    public SellInstrumentDto sellInstrument(@NotNull SellInstrumentDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createSellInstrumentOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return SellInstrumentDto.from(operation);
+        });
+    }
+
+    @Override
+    public SellBondDto sellBond(@NotNull SellBondDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createSellBondOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return SellBondDto.from(operation);
+        });
+    }
+
+    @Override
+    public DividendDto dividend(@NotNull DividendDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createDividendOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return DividendDto.from(operation);
+        });
+    }
+
+    @Override
+    public CouponDto coupon(@NotNull CouponDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createCouponOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return CouponDto.from(operation);
+        });
+    }
+
+    @Override
+    public TaxDto tax(@NotNull TaxDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createTaxOperation(loadPortfolio(dto.getPortfolioName()), dto);
+            processOperation(operation);
+            return TaxDto.from(operation);
+        });
+    }
+
+    @Override
+    public BondRedemptionDto bondRedemption(@NotNull BondRedemptionDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createBondRedemptionOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return BondRedemptionDto.from(operation);
+        });
+    }
+
+    @Override
+    public InstrumentConversionDto instrumentConversion(@NotNull InstrumentConversionDto dto) {
+        return lockManager.execute(dto.getPortfolioName(), () -> {
+            var operation = createInstrumentConversionOperation(loadPortfolio(dto.getPortfolioName()),
+                    loadInstrument(dto.getSymbol()), dto);
+            processOperation(operation);
+            return InstrumentConversionDto.from(operation);
+        });
+    }
+
+    @Override
+    public ImportResultDto importOperations(@Nullable String portfolioName, @NotNull Reader source) {
+        var result = new ImportResultDto();
+        var start = System.currentTimeMillis();
+        var batchSize = applicationConfig.getImportBatchSize();
+        Map<Long, OperationImportRowDto> chunk = new LinkedHashMap<>();
+        var instruments = instrumentRepository.findAll().stream()
+                .collect(Collectors.toMap(Instrument::getSymbol, Function.identity()));
+
+        try (var reader = new BufferedReader(source)) {
+            String line;
+            long lineNumber = 0;
+            while (nonNull(line = reader.readLine())) {
+                lineNumber++;
+                if (!StringUtils.hasText(line) || (lineNumber == 1 && line.startsWith(CSV_HEADER_PREFIX))) {
+                    continue;
+                }
+                try {
+                    chunk.put(lineNumber, parseOperationRow(line));
+                } catch (RuntimeException e) {
+                    result.addError(lineNumber, e.getMessage());
+                }
+                if (chunk.size() >= batchSize) {
+                    importOperations(portfolioName, instruments, chunk, result);
+                }
+            }
+            importOperations(portfolioName, instruments, chunk, result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        result.setDurationMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    @Override
+    public <D extends OperationDto> CompletableFuture<D> submit(@NotNull D dto) {
+        var portfolioName = ofNullable(dto.getPortfolioName()).orElseGet(applicationConfig::getDefaultPortfolioName);
+        if (isNull(portfolioName)) {
+            return CompletableFuture.failedFuture(new PortfolioNotFoundException(null));
+        }
+        return writeQueue.submit(portfolioName, dto);
+    }
+
+    @Override
+    public String deleteOperation(@NotNull Long id) {
+        return lockManager.execute(getPortfolioName(id), () -> {
+            var operation = loadOperation(id, true);
+            var incremental = isIncremental(operation);
+            if (incremental) {
+                operationsProcessor.revert(operation);
+            }
+            operation.setDeleted(true);
+            saveChangedOperation(operation);
+            return "Deleted operation " + id + (incremental ? "" : rebuild(operation));
+        });
+    }
+
+    @Override
+    public String restoreOperation(@NotNull Long id) {
+        return lockManager.execute(getPortfolioName(id), () -> {
+            var operation = loadOperation(id, false);
+            var incremental = isIncremental(operation);
+            if (incremental) {
+                checkCanApply(operation);
+                operationsProcessor.apply(operation);
+            }
+            operation.setDeleted(false);
+            saveChangedOperation(operation);
+            return "Restored operation " + id + (incremental ? "" : rebuild(operation));
+        });
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public List<String> checkAccountingPrices(@Nullable String portfolioName) {
+        var portfolio = loadPortfolio(portfolioName);
+        var event = new AccountingPriceEvent();
+        event.begin();
+        List<String> errors = new ArrayList<>();
+        for (var position : portfolio.getPositions()) {
+            var buyTotalPrice = calcTotalPrice(position.getInstrument(), portfolio.getOperations(), OperationType.BUY);
+            var sellTotalPrice = calcTotalPrice(position.getInstrument(), portfolio.getOperations(), OperationType.SELL);
+            if (buyTotalPrice.compareTo(position.getBuyTotalPrice()) != 0
+                    || sellTotalPrice.compareTo(position.getSellTotalPrice()) != 0) {
+                errors.add(position.getInstrument().getSymbol() +
+                        ": buy total " + position.getBuyTotalPrice() + " (by operations " + buyTotalPrice + ")" +
+                        ", sell total " + position.getSellTotalPrice() + " (by operations " + sellTotalPrice + ")");
+            }
+        }
+        if (event.shouldCommit()) {
+            event.setPortfolioName(portfolio.getName());
+            event.setSource(AccountingPriceEvent.CHECK);
+            event.setPositions(portfolio.getPositions().size());
+            // buy and sell totals of each position are calculated by all operations
+            event.setOperationsScanned(2L * portfolio.getPositions().size() * portfolio.getOperations().size());
+            event.commit();
+        }
+        return errors;
+    }
+
+    private Operation createAddMoneyOperation(Portfolio portfolio, AddMoneyDto dto) {
+        return new Operation()
             .setAmount(1)
             .setPortfolio(portfolio)
             .setPrice(dto.getValue())
             .setType(OperationType.ADD_MONEY)
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return AddMoneyDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public WithdrawMoneyDto withdrawMoney(@NotNull WithdrawMoneyDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
+    private Operation createWithdrawMoneyOperation(Portfolio portfolio, WithdrawMoneyDto dto) {
         checkIsMoneySufficient(portfolio, dto.getValue());
 
-        var operation = new Operation()
+        return new Operation()
             .setAmount(1)
             .setPortfolio(portfolio)
             .setPrice(dto.getValue())
             .setType(OperationType.WITHDRAW_MONEY)
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return WithdrawMoneyDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public BuyInstrumentDto buyInstrument(@NotNull BuyInstrumentDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
+    private Operation createBuyInstrumentOperation(Portfolio portfolio, Instrument instrument, BuyInstrumentDto dto) {
         validateInstrumentType(instrument.getType(), InstrumentType.typesWithoutCoupon());
         checkIsMoneySufficient(portfolio, dto.getTotalPrice());
 
-        var operation = new Operation()
+        return new Operation()
             .setType(OperationType.BUY)
             .setInstrument(instrument)
             .setPortfolio(portfolio)
@@ -103,17 +369,9 @@ public class OperationsServiceImpl implements OperationsService {
             .setAccumulatedCouponIncome(BigDecimal.ZERO)
             .setAmount(dto.getAmount())
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return BuyInstrumentDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public BuyBondDto buyBond(@NotNull BuyBondDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
+    private Operation createBuyBondOperation(Portfolio portfolio, Instrument instrument, BuyBondDto dto) {
         validateInstrumentType(instrument.getType(), InstrumentType.typesWithCoupon());
         // accumulated coupon income + total price of bonds
         var totalPrice = dto.getAccumulatedCouponIncome().add(
@@ -123,7 +381,7 @@ public class OperationsServiceImpl implements OperationsService {
         );
         checkIsMoneySufficient(portfolio, totalPrice);
 
-        var operation = new Operation()
+        return new Operation()
             .setType(OperationType.BUY)
             .setInstrument(instrument)
             .setPortfolio(portfolio)
@@ -133,21 +391,13 @@ public class OperationsServiceImpl implements OperationsService {
             .setPercent(dto.getPercent())
             .setAmount(dto.getAmount())
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return BuyBondDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public SellInstrumentDto sellInstrument(@NotNull SellInstrumentDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
+    private Operation createSellInstrumentOperation(Portfolio portfolio, Instrument instrument, SellInstrumentDto dto) {
         validateInstrumentType(instrument.getType(), InstrumentType.typesWithoutCoupon());
         checkIsAmountSufficient(portfolio, dto.getSymbol(), dto.getAmount());
 
-        var operation = new Operation()
+        return new Operation()
             .setType(OperationType.SELL)
             .setInstrument(instrument)
             .setPortfolio(portfolio)
@@ -155,21 +405,13 @@ public class OperationsServiceImpl implements OperationsService {
             .setAccumulatedCouponIncome(BigDecimal.ZERO)
             .setAmount(dto.getAmount())
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return SellInstrumentDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public SellBondDto sellBond(@NotNull SellBondDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
+    private Operation createSellBondOperation(Portfolio portfolio, Instrument instrument, SellBondDto dto) {
         validateInstrumentType(instrument.getType(), InstrumentType.typesWithCoupon());
         checkIsAmountSufficient(portfolio, dto.getSymbol(), dto.getAmount());
 
-        var operation = new Operation()
+        return new Operation()
             .setType(OperationType.SELL)
             .setInstrument(instrument)
             .setPortfolio(portfolio)
@@ -179,84 +421,51 @@ public class OperationsServiceImpl implements OperationsService {
             .setPercent(dto.getPercent())
             .setAmount(dto.getAmount())
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return SellBondDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public DividendDto dividend(@NotNull DividendDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
+    private Operation createDividendOperation(Portfolio portfolio, Instrument instrument, DividendDto dto) {
         validateInstrumentType(instrument.getType(), InstrumentType.typesWithDividend());
         checkIsAmountSufficient(portfolio, dto.getSymbol(), dto.getAmount());
 
-        var operation = new Operation()
+        return new Operation()
             .setType(OperationType.DIVIDEND)
             .setInstrument(instrument)
             .setPortfolio(portfolio)
             .setPrice(dto.getPrice())
             .setAmount(dto.getAmount())
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return DividendDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public CouponDto coupon(@NotNull CouponDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
+    private Operation createCouponOperation(Portfolio portfolio, Instrument instrument, CouponDto dto) {
         validateInstrumentType(instrument.getType(), InstrumentType.typesWithCoupon());
         checkIsAmountSufficient(portfolio, dto.getSymbol(), dto.getAmount());
 
-        var operation = new Operation()
+        return new Operation()
             .setType(OperationType.COUPON)
             .setInstrument(instrument)
             .setPortfolio(portfolio)
             .setPrice(dto.getPrice())
             .setAmount(dto.getAmount())
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return CouponDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public TaxDto tax(@NotNull TaxDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
+    private Operation createTaxOperation(Portfolio portfolio, TaxDto dto) {
         checkIsMoneySufficient(portfolio, dto.getValue());
 
-        var operation = new Operation()
+        return new Operation()
             .setAmount(1)
             .setPortfolio(portfolio)
             .setPrice(dto.getValue())
             .setType(OperationType.TAX)
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return TaxDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public BondRedemptionDto bondRedemption(@NotNull BondRedemptionDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
+    private Operation createBondRedemptionOperation(Portfolio portfolio, Instrument instrument, BondRedemptionDto dto) {
         validateInstrumentType(instrument.getType(), InstrumentType.typesWithCoupon());
-        var instrumentPosition = portfolio.getPositions().stream()
-                .filter(position -> position.getInstrument().equals(instrument))
-                .findFirst()
+        var instrumentPosition = portfolio.findPosition(instrument.getSymbol())
                 .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(), dto.getSymbol()));
 
-        var operation = new Operation()
+        return new Operation()
             .setType(OperationType.BOND_REDEMPTION)
             .setInstrument(instrument)
             .setPortfolio(portfolio)
@@ -264,41 +473,277 @@ public class OperationsServiceImpl implements OperationsService {
             .setAmount(instrumentPosition.getAmount())
             .setAccumulatedCouponIncome(dto.getAccumulatedCouponIncome())
             .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
-
-        processOperation(operation);
-        return BondRedemptionDto.from(operation);
     }
 
-    @Transactional
-    @Override
-    public InstrumentConversionDto instrumentConversion(@NotNull InstrumentConversionDto dto) {
-        var portfolio = loadPortfolio(dto.getPortfolioName());
-        var instrument = loadInstrument(dto.getSymbol());
-        var instrumentPosition = portfolio.getPositions().stream()
-                .filter(position -> position.getInstrument().equals(instrument))
-                .findFirst()
+    private Operation createInstrumentConversionOperation(Portfolio portfolio, Instrument instrument,
+                                                          InstrumentConversionDto dto) {
+        var instrumentPosition = portfolio.findPosition(instrument.getSymbol())
                 .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(), dto.getSymbol()));
 
         var newPrice = instrumentPosition.getAccountingPrice()
                 .multiply(BigDecimal.valueOf(instrumentPosition.getAmount()))
                 .divide(BigDecimal.valueOf(dto.getNewAmount()), applicationConfig.getBigdecimalOperationsScale(), RoundingMode.FLOOR);
 
-        var operation = new Operation()
+        return new Operation()
                 .setType(OperationType.INSTRUMENT_CONVERSION)
                 .setInstrument(instrument)
                 .setPortfolio(portfolio)
                 .setPrice(newPrice)
                 .setAmount(dto.getNewAmount())
                 .setWhenAdd(getWhenAdd(dto));
-        operation = operationRepository.save(operation);
+    }
+
+    /** Import chunk of rows in one transaction. Rows with errors are skipped.
+     * If chunk fails on flush or commit, e.g. by entity constraints, it's reported as a whole, previous chunks stay imported. */
+    private void importOperations(@Nullable String portfolioName, Map<String, Instrument> instruments,
+                                  Map<Long, OperationImportRowDto> chunk, ImportResultDto result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Map<Long, Function<Portfolio, Operation>> factories = new LinkedHashMap<>();
+        chunk.forEach((lineNumber, row) -> factories.put(lineNumber,
+                portfolio -> createOperation(portfolio, instruments, row)));
+        Map<Long, Operation> applied = new LinkedHashMap<>();
+        Map<Long, RuntimeException> failed = new LinkedHashMap<>();
+        try {
+            applyBatch(portfolioName, factories, applied, failed);
+        } catch (RuntimeException e) {
+            var lineNumbers = new ArrayList<>(chunk.keySet());
+            result.addChunkError(lineNumbers.get(0), lineNumbers.get(lineNumbers.size() - 1), chunk.size(),
+                    getErrorMessage(e));
+            chunk.clear();
+            return;
+        }
+        failed.forEach((lineNumber, e) -> result.addError(lineNumber, e.getMessage()));
+        result.setImported(result.getImported() + applied.size());
+        chunk.clear();
+    }
+
+    /** Apply queued operations of portfolio in one transaction, futures are completed after commit. */
+    private void writeQueued(String portfolioName, List<PortfolioWriteQueue.Task<OperationDto>> tasks) {
+        Map<PortfolioWriteQueue.Task<OperationDto>, Function<Portfolio, Operation>> factories = new LinkedHashMap<>();
+        tasks.forEach(task -> factories.put(task, portfolio -> createOperation(portfolio, task.getPayload())));
+        Map<PortfolioWriteQueue.Task<OperationDto>, Operation> applied = new LinkedHashMap<>();
+        Map<PortfolioWriteQueue.Task<OperationDto>, RuntimeException> failed = new LinkedHashMap<>();
+        applyBatch(portfolioName, factories, applied, failed);
+        applied.forEach((task, operation) -> task.getFuture()
+                .complete(FROM_OPERATION.get(task.getPayload().getClass()).apply(operation)));
+        failed.forEach((task, e) -> task.getFuture().completeExceptionally(e));
+    }
+
+    /** Apply operations to portfolio in one transaction: operations are inserted in one JDBC batch,
+     * portfolio and positions are saved once. Operations failed on creation are skipped.
+     * @param applied - filled with applied operations by keys
+     * @param failed - filled with errors by keys */
+    private <K> void applyBatch(@Nullable String portfolioName, Map<K, Function<Portfolio, Operation>> factories,
+                                Map<K, Operation> applied, Map<K, RuntimeException> failed) {
+        lockManager.execute(portfolioName, () -> {
+            // results of failed attempt are dropped on retry
+            applied.clear();
+            failed.clear();
+            var portfolio = loadPortfolio(portfolioName);
+            LocalDateTime firstWhenAdd = null;
+            for (var entry : factories.entrySet()) {
+                try {
+                    var operation = entry.getValue().apply(portfolio);
+                    operationsProcessor.apply(operation);
+                    applied.put(entry.getKey(), operation);
+                    if (isNull(firstWhenAdd) || operation.getWhenAdd().isBefore(firstWhenAdd)) {
+                        firstWhenAdd = operation.getWhenAdd();
+                    }
+                } catch (RuntimeException e) {
+                    failed.put(entry.getKey(), e);
+                }
+            }
+            var ids = sequenceIdAllocator.allocate(OPERATION_SEQUENCE, applied.size());
+            List<Object[]> rows = new ArrayList<>(applied.size());
+            for (var operation : applied.values()) {
+                operation.setId(ids[rows.size()]);
+                rows.add(toInsertParameters(operation));
+            }
+            jdbcTemplate.batchUpdate(INSERT_OPERATION_SQL, rows);
+            portfolioRepository.save(portfolio);
+            if (nonNull(firstWhenAdd)) {
+                snapshotRepository.deleteFromDate(portfolio, firstWhenAdd);
+            }
+            return null;
+        });
+    }
+
+    /** Create operation from DTO of any type with validation. */
+    private Operation createOperation(Portfolio portfolio, OperationDto dto) {
+        if (dto instanceof AddMoneyDto) {
+            return createAddMoneyOperation(portfolio, (AddMoneyDto) dto);
+        } else if (dto instanceof WithdrawMoneyDto) {
+            return createWithdrawMoneyOperation(portfolio, (WithdrawMoneyDto) dto);
+        } else if (dto instanceof BuyInstrumentDto) {
+            var buyDto = (BuyInstrumentDto) dto;
+            return createBuyInstrumentOperation(portfolio, loadInstrument(buyDto.getSymbol()), buyDto);
+        } else if (dto instanceof BuyBondDto) {
+            var buyDto = (BuyBondDto) dto;
+            return createBuyBondOperation(portfolio, loadInstrument(buyDto.getSymbol()), buyDto);
+        } else if (dto instanceof SellInstrumentDto) {
+            var sellDto = (SellInstrumentDto) dto;
+            return createSellInstrumentOperation(portfolio, loadInstrument(sellDto.getSymbol()), sellDto);
+        } else if (dto instanceof SellBondDto) {
+            var sellDto = (SellBondDto) dto;
+            return createSellBondOperation(portfolio, loadInstrument(sellDto.getSymbol()), sellDto);
+        } else if (dto instanceof DividendDto) {
+            var dividendDto = (DividendDto) dto;
+            return createDividendOperation(portfolio, loadInstrument(dividendDto.getSymbol()), dividendDto);
+        } else if (dto instanceof CouponDto) {
+            var couponDto = (CouponDto) dto;
+            return createCouponOperation(portfolio, loadInstrument(couponDto.getSymbol()), couponDto);
+        } else if (dto instanceof TaxDto) {
+            return createTaxOperation(portfolio, (TaxDto) dto);
+        } else if (dto instanceof BondRedemptionDto) {
+            var redemptionDto = (BondRedemptionDto) dto;
+            return createBondRedemptionOperation(portfolio, loadInstrument(redemptionDto.getSymbol()), redemptionDto);
+        } else if (dto instanceof InstrumentConversionDto) {
+            var conversionDto = (InstrumentConversionDto) dto;
+            return createInstrumentConversionOperation(portfolio, loadInstrument(conversionDto.getSymbol()),
+                    conversionDto);
+        }
+        throw new UnsupportedOperationException(dto.getClass().getSimpleName());
+    }
+
+    /** Create operation from import row with the same validation as single operations. */
+    private Operation createOperation(Portfolio portfolio, Map<String, Instrument> instruments, OperationImportRowDto row) {
+        var type = OperationType.valueOf(required(row.getType(), "type").trim().toUpperCase());
+        var whenAdd = dateTimeHelper.parse(row.getWhenAdd());
+        switch (type) {
+            case ADD_MONEY:
+                return createAddMoneyOperation(portfolio, AddMoneyDto.builder()
+                        .whenAdd(whenAdd).value(required(row.getPrice(), "price")).build());
+            case WITHDRAW_MONEY:
+                return createWithdrawMoneyOperation(portfolio, WithdrawMoneyDto.builder()
+                        .whenAdd(whenAdd).value(required(row.getPrice(), "price")).build());
+            case TAX:
+                return createTaxOperation(portfolio, TaxDto.builder()
+                        .whenAdd(whenAdd).value(required(row.getPrice(), "price")).build());
+            default:
+                break;
+        }
+        var symbol = required(row.getSymbol(), "symbol");
+        var instrument = ofNullable(instruments.get(symbol))
+                .orElseThrow(() -> new InstrumentNotFoundException(symbol));
+        var isBond = InstrumentType.typesWithCoupon().contains(instrument.getType());
+        switch (type) {
+            case BUY:
+                return isBond
+                        ? createBuyBondOperation(portfolio, instrument, BuyBondDto.builder()
+                                .symbol(symbol).whenAdd(whenAdd)
+                                .amount(required(row.getAmount(), "amount"))
+                                .percent(required(row.getPercent(), "percent"))
+                                .accumulatedCouponIncome(ofNullable(row.getAccumulatedCouponIncome()).orElse(BigDecimal.ZERO))
+                                .build())
+                        : createBuyInstrumentOperation(portfolio, instrument, BuyInstrumentDto.builder()
+                                .symbol(symbol).whenAdd(whenAdd)
+                                .amount(required(row.getAmount(), "amount"))
+                                .price(required(row.getPrice(), "price"))
+                                .build());
+            case SELL:
+                return isBond
+                        ? createSellBondOperation(portfolio, instrument, SellBondDto.builder()
+                                .symbol(symbol).whenAdd(whenAdd)
+                                .amount(required(row.getAmount(), "amount"))
+                                .percent(required(row.getPercent(), "percent"))
+                                .accumulatedCouponIncome(ofNullable(row.getAccumulatedCouponIncome()).orElse(BigDecimal.ZERO))
+                                .build())
+                        : createSellInstrumentOperation(portfolio, instrument, SellInstrumentDto.builder()
+                                .symbol(symbol).whenAdd(whenAdd)
+                                .amount(required(row.getAmount(), "amount"))
+                                .price(required(row.getPrice(), "price"))
+                                .build());
+            case DIVIDEND:
+                return createDividendOperation(portfolio, instrument, DividendDto.builder()
+                        .symbol(symbol).whenAdd(whenAdd)
+                        .amount(required(row.getAmount(), "amount"))
+                        .price(required(row.getPrice(), "price"))
+                        .build());
+            case COUPON:
+                return createCouponOperation(portfolio, instrument, CouponDto.builder()
+                        .symbol(symbol).whenAdd(whenAdd)
+                        .amount(required(row.getAmount(), "amount"))
+                        .price(required(row.getPrice(), "price"))
+                        .build());
+            case BOND_REDEMPTION:
+                return createBondRedemptionOperation(portfolio, instrument, BondRedemptionDto.builder()
+                        .symbol(symbol).whenAdd(whenAdd)
+                        .accumulatedCouponIncome(ofNullable(row.getAccumulatedCouponIncome()).orElse(BigDecimal.ZERO))
+                        .build());
+            case INSTRUMENT_CONVERSION:
+                return createInstrumentConversionOperation(portfolio, instrument, InstrumentConversionDto.builder()
+                        .symbol(symbol).whenAdd(whenAdd)
+                        .newAmount(required(row.getAmount(), "amount"))
+                        .build());
+            default:
+                throw new UnsupportedOperationException(type.name());
+        }
+    }
+
+    /** Parse JSON object or CSV line: type,symbol,amount,price,accumulatedCouponIncome,percent,whenAdd. */
+    private OperationImportRowDto parseOperationRow(String line) {
+        if (line.trim().startsWith("{")) {
+            try {
+                return objectMapper.readValue(line, OperationImportRowDto.class);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e.getOriginalMessage());
+            }
+        }
+        var columns = line.split(",", -1);
+        var row = new OperationImportRowDto();
+        row.setType(column(columns, 0));
+        row.setSymbol(column(columns, 1));
+        row.setAmount(ofNullable(column(columns, 2)).map(Integer::valueOf).orElse(null));
+        row.setPrice(ofNullable(column(columns, 3)).map(BigDecimal::new).orElse(null));
+        row.setAccumulatedCouponIncome(ofNullable(column(columns, 4)).map(BigDecimal::new).orElse(null));
+        row.setPercent(ofNullable(column(columns, 5)).map(BigDecimal::new).orElse(null));
+        row.setWhenAdd(column(columns, 6));
+        return row;
+    }
+
+    private static String column(String[] columns, int index) {
+        return index < columns.length && StringUtils.hasText(columns[index]) ? columns[index].trim() : null;
+    }
+
+    /** Get message of root cause, constraint violations are listed by property. */
+    private static String getErrorMessage(RuntimeException e) {
+        var cause = NestedExceptionUtils.getMostSpecificCause(e);
+        if (cause instanceof ConstraintViolationException) {
+            return ((ConstraintViolationException) cause).getConstraintViolations().stream()
+                    .map(violation -> violation.getRootBeanClass().getSimpleName() + "." +
+                            violation.getPropertyPath() + " " + violation.getMessage())
+                    .collect(Collectors.joining(", "));
+        }
+        return cause.getMessage();
+    }
+
+    private static <T> T required(T value, String name) {
+        if (isNull(value)) {
+            throw new IllegalArgumentException("Required value is not set: " + name);
+        }
+        return value;
+    }
 
-        processOperation(operation);
-        return InstrumentConversionDto.from(operation);
+    private static Object[] toInsertParameters(Operation operation) {
+        return new Object[]{
+                operation.getId(),
+                operation.getType().name(),
+                operation.getPortfolio().getName(),
+                ofNullable(operation.getInstrument()).map(Instrument::getSymbol).orElse(null),
+                operation.getAmount(),
+                operation.getPrice(),
+                operation.getAccumulatedCouponIncome(),
+                operation.getPercent(),
+                operation.getDeleted(),
+                operation.getProcessed(),
+                Timestamp.valueOf(operation.getWhenAdd())
+        };
     }
 
     private Instrument loadInstrument(String symbol) {
-        return instrumentRepository.findById(symbol)
+        return referenceDataCache.findInstrument(symbol)
                 .orElseThrow(() -> new InstrumentNotFoundException(symbol));
     }
 
@@ -308,126 +753,106 @@ public class OperationsServiceImpl implements OperationsService {
                 .orElseThrow(() -> new PortfolioNotFoundException(name));
     }
 
-    private void checkIsMoneySufficient(Portfolio portfolio, BigDecimal value) {
-        if (portfolio.getAvailableMoney().compareTo(value) < 0)
-            throw new InsufficientMoneyException(portfolio.getName());
-    }
-
-    private void checkIsAmountSufficient(Portfolio portfolio, String symbol, Integer amount) {
-        if (portfolio.getPositions().stream()
-                .filter(position -> position.getInstrument().getSymbol().equals(symbol))
-                .anyMatch(position -> position.getAmount() < amount))
-            throw new InsufficientAmountException(portfolio.getName(), symbol);
+    private String getPortfolioName(Long id) {
+        return operationRepository.findPortfolioNameById(id)
+                .orElseThrow(() -> new OperationNotFoundException(id));
     }
 
-    private void validateInstrumentType(InstrumentType type, Set<InstrumentType> availableTypes) {
-        if (!availableTypes.contains(type))
-            throw new UnsupportedInstrumentTypeException(type.name());
+    private Operation loadOperation(Long id, boolean deleted) {
+        var operation = operationRepository.findById(id)
+                .orElseThrow(() -> new OperationNotFoundException(id));
+        if (operation.getDeleted() == deleted) {
+            throw new IllegalArgumentException("Operation " + id + (deleted ? " is already deleted" : " is not deleted"));
+        }
+        return operation;
     }
 
-    /** Process operation. */
-    private void processOperation(Operation operation) {
-        operation.setProcessed(true);
+    /** Check that applying of operation in current state of portfolio will not make money or amount negative. */
+    private void checkCanApply(Operation operation) {
         var portfolio = operation.getPortfolio();
         switch (operation.getType()) {
-            case ADD_MONEY:
-            case DIVIDEND:
-            case COUPON:
-                portfolio.setAvailableMoney(portfolio.getAvailableMoney().add(operation.getTotalPrice()));
-                break;
             case WITHDRAW_MONEY:
             case TAX:
-                portfolio.setAvailableMoney(portfolio.getAvailableMoney().subtract(operation.getTotalPrice()));
+                checkIsMoneySufficient(portfolio, operation.getTotalPrice());
                 break;
             case BUY:
-                portfolio.setAvailableMoney(portfolio.getAvailableMoney()
-                        .subtract(operation.getTotalPrice())
-                        .subtract(operation.getAccumulatedCouponIncome()));
-                updateInstrumentPositionOnBuy(operation);
+                checkIsMoneySufficient(portfolio, operation.getTotalPrice().add(operation.getAccumulatedCouponIncome()));
                 break;
             case SELL:
             case BOND_REDEMPTION:
-                portfolio.setAvailableMoney(portfolio.getAvailableMoney().add(operation.getTotalPrice())
-                        .add(operation.getAccumulatedCouponIncome()));
-                updateInstrumentPositionOnSell(operation);
-                break;
-            case INSTRUMENT_CONVERSION:
-                updateInstrumentPositionOnConversion(operation);
+                checkIsAmountSufficient(portfolio, operation.getInstrument().getSymbol(), operation.getAmount());
                 break;
             default:
-                throw new UnsupportedOperationException(operation.getType().name());
+                break;
         }
+    }
+
+    /** Save operation with changed deleted flag and its portfolio, snapshots after operation become stale. */
+    private void saveChangedOperation(Operation operation) {
         operationRepository.save(operation);
-        portfolioRepository.save(portfolio);
+        portfolioRepository.save(operation.getPortfolio());
+        snapshotRepository.deleteFromDate(operation.getPortfolio(), operation.getWhenAdd());
     }
 
-    private void updateInstrumentPositionOnBuy(Operation operation) {
-        var portfolio = operation.getPortfolio();
-        var currentPosition = portfolio.getPositions().stream()
-                .filter(instrumentPosition -> instrumentPosition.getInstrument().equals(operation.getInstrument()))
-                .findFirst();
-        if (currentPosition.isPresent()) {
-            // update existing: need to recalc accounting price
-            var position = currentPosition.get();
-            final var newAmount = position.getAmount() + operation.getAmount();
-            position.setAmount(newAmount);
-            position.setAccountingPrice(calcAccountingPrice(operation.getInstrument(), portfolio.getOperations(), newAmount));
-        } else {
-            // add new position: operation price === accounting price
-            var newPosition = new InstrumentPosition()
-                .setPortfolio(portfolio)
-                .setInstrument(operation.getInstrument())
-                .setAmount(operation.getAmount())
-                .setAccountingPrice(operation.getPrice());
-            portfolio.getPositions().add(newPosition);
+    /** Check if operation can be reverted or applied to current state of portfolio.
+     * Conversion sets amount and accounting price of position, so conversion and operations of instrument
+     * before not deleted conversion change position only by replay. */
+    private boolean isIncremental(Operation operation) {
+        if (operation.getType() == OperationType.INSTRUMENT_CONVERSION) {
+            return false;
         }
+        return isNull(operation.getInstrument()) || !operationRepository.existsConversionAfter(
+                operation.getPortfolio(), operation.getInstrument(), operation.getWhenAdd(), operation.getId());
     }
 
-    private void updateInstrumentPositionOnSell(Operation operation) {
-        var portfolio = operation.getPortfolio();
-        var position = portfolio.getPositions().stream()
-                .filter(instrumentPosition -> instrumentPosition.getInstrument().equals(operation.getInstrument()))
-                .findFirst()
-                .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(),
-                        operation.getInstrument().getSymbol()));
+    /** Rebuild portfolio in transaction of changed operation, if rebuild fails, change of operation is rolled back. */
+    private String rebuild(Operation operation) {
+        return ", portfolio is rebuilt: " + rebuildHelper.rebuildInTransaction(operation.getPortfolio().getName());
+    }
 
-        final var newAmount = position.getAmount() - operation.getAmount();
-        position.setAmount(newAmount);
-        position.setAccountingPrice(newAmount > 0 ? calcAccountingPrice(operation.getInstrument(), portfolio.getOperations(), newAmount)
-                : BigDecimal.ZERO);
+    private void checkIsMoneySufficient(Portfolio portfolio, BigDecimal value) {
+        if (portfolio.getAvailableMoney().compareTo(value) < 0)
+            throw new InsufficientMoneyException(portfolio.getName());
     }
 
-    private void updateInstrumentPositionOnConversion(Operation operation) {
-        var portfolio = operation.getPortfolio();
-        var position = portfolio.getPositions().stream()
-                .filter(instrumentPosition -> instrumentPosition.getInstrument().equals(operation.getInstrument()))
-                .findFirst()
-                .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(),
-                        operation.getInstrument().getSymbol()));
+    private void checkIsAmountSufficient(Portfolio portfolio, String symbol, Integer amount) {
+        if (portfolio.findPosition(symbol)
+                .filter(position -> position.getAmount() < amount)
+                .isPresent())
+            throw new InsufficientAmountException(portfolio.getName(), symbol);
+    }
+
+    private void validateInstrumentType(InstrumentType type, Set<InstrumentType> availableTypes) {
+        if (!availableTypes.contains(type))
+            throw new UnsupportedInstrumentTypeException(type.name());
+    }
 
-        position.setAmount(operation.getAmount());
-        position.setAccountingPrice(operation.getPrice());
+    /** Process operation, processing is recorded as JFR event. */
+    private void processOperation(Operation operation) {
+        var event = new OperationProcessedEvent();
+        event.begin();
+        operationsProcessor.apply(operation);
+        operationRepository.save(operation);
+        portfolioRepository.save(operation.getPortfolio());
+        snapshotRepository.deleteFromDate(operation.getPortfolio(), operation.getWhenAdd());
+        if (event.shouldCommit()) {
+            event.setPortfolioName(operation.getPortfolio().getName());
+            event.setOperationType(operation.getType().name());
+            event.setSymbol(isNull(operation.getInstrument()) ? null : operation.getInstrument().getSymbol());
+            event.setOperationsScanned(1);
+            event.commit();
+        }
     }
 
-    /** Calc accounting price based on total values and current amount. */
-    private BigDecimal calcAccountingPrice(Instrument instrument, List<Operation> operations, Integer currentAmount) {
-        // calc new accounting price
-        BigDecimal buyOperationsTotalValue = operations.stream()
-                .filter(Operation::getProcessed)
-                .filter(op -> !op.getDeleted())
-                .filter(op -> op.getType() == OperationType.BUY)
-                .filter(op -> op.getInstrument().equals(instrument))
-                .map(Operation::getTotalPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        BigDecimal sellOperationsTotalValue = operations.stream()
+    /** Calc total price of processed operations by instrument with type, scans all operations. */
+    private static BigDecimal calcTotalPrice(Instrument instrument, List<Operation> operations, OperationType type) {
+        return operations.stream()
                 .filter(Operation::getProcessed)
                 .filter(op -> !op.getDeleted())
-                .filter(op -> op.getType() == OperationType.SELL)
+                .filter(op -> op.getType() == type)
                 .filter(op -> op.getInstrument().equals(instrument))
                 .map(Operation::getTotalPrice)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
-        return buyOperationsTotalValue.subtract(sellOperationsTotalValue)
-                .divide(BigDecimal.valueOf(currentAmount), applicationConfig.getBigdecimalOperationsScale(), RoundingMode.FLOOR);
     }
 
     /** Extract from DTO or get current LDT. */
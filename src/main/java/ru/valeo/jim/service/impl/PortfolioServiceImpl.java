@@ -4,10 +4,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotBlank;
@@ -22,10 +22,14 @@ import ru.valeo.jim.config.ApplicationConfig;
 import ru.valeo.jim.domain.Instrument;
 import ru.valeo.jim.domain.InstrumentCategory;
 import ru.valeo.jim.domain.InstrumentCategoryTargetDistribution;
-import ru.valeo.jim.domain.InstrumentPrice;
+import ru.valeo.jim.domain.InstrumentPosition;
 import ru.valeo.jim.domain.Operation;
 import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.domain.PortfolioSnapshot;
 import ru.valeo.jim.dto.InstrumentPositionDto;
+import ru.valeo.jim.dto.OperationsFilterDto;
+import ru.valeo.jim.dto.OperationsPageDto;
+import ru.valeo.jim.dto.PortfolioDashboardDto;
 import ru.valeo.jim.dto.PortfolioDto;
 import ru.valeo.jim.dto.PortfolioInstrumentsDistributionDto;
 import ru.valeo.jim.dto.PortfolioRebalancePropositionDto;
@@ -34,6 +38,7 @@ import ru.valeo.jim.dto.operation.BondRedemptionDto;
 import ru.valeo.jim.dto.operation.BuyInstrumentDto;
 import ru.valeo.jim.dto.operation.CouponDto;
 import ru.valeo.jim.dto.operation.DividendDto;
+import ru.valeo.jim.dto.operation.InstrumentConversionDto;
 import ru.valeo.jim.dto.operation.OperationDto;
 import ru.valeo.jim.dto.operation.SellInstrumentDto;
 import ru.valeo.jim.dto.operation.TaxDto;
@@ -41,16 +46,21 @@ import ru.valeo.jim.dto.operation.WithdrawMoneyDto;
 import ru.valeo.jim.exception.CurrencyNotFoundException;
 import ru.valeo.jim.exception.InstrumentCategoryNotFoundException;
 import ru.valeo.jim.exception.InstrumentPositionNotFoundException;
+import ru.valeo.jim.exception.OperationNotFoundException;
 import ru.valeo.jim.exception.PortfolioNotFoundException;
 import ru.valeo.jim.exception.UnexpectedValueException;
-import ru.valeo.jim.repository.CurrencyRepository;
-import ru.valeo.jim.repository.InstrumentCategoryRepository;
-import ru.valeo.jim.repository.InstrumentPriceRepository;
 import ru.valeo.jim.repository.OperationRepository;
 import ru.valeo.jim.repository.PortfolioRepository;
+import ru.valeo.jim.repository.PortfolioSnapshotRepository;
+import ru.valeo.jim.service.InstrumentPriceCache;
+import ru.valeo.jim.service.PortfolioLockManager;
 import ru.valeo.jim.service.PortfolioRebalanceHelper;
+import ru.valeo.jim.service.PortfolioRebuildHelper;
 import ru.valeo.jim.service.PortfolioService;
+import ru.valeo.jim.service.ReferenceDataCache;
+import ru.valeo.jim.service.jfr.DistributionEvent;
 
+import static java.util.Objects.isNull;
 import static java.util.Optional.ofNullable;
 
 @AllArgsConstructor
@@ -58,11 +68,13 @@ import static java.util.Optional.ofNullable;
 public class PortfolioServiceImpl implements PortfolioService {
 
     private final PortfolioRepository portfolioRepository;
+    private final PortfolioSnapshotRepository snapshotRepository;
     private final OperationRepository operationRepository;
-    private final CurrencyRepository currencyRepository;
-    private final InstrumentPriceRepository instrumentPriceRepository;
-    private final InstrumentCategoryRepository instrumentCategoryRepository;
+    private final InstrumentPriceCache instrumentPriceCache;
+    private final ReferenceDataCache referenceDataCache;
     private final PortfolioRebalanceHelper rebalanceHelper;
+    private final PortfolioRebuildHelper rebuildHelper;
+    private final PortfolioLockManager lockManager;
     private final ApplicationConfig applicationConfig;
 
     @Transactional(readOnly = true)
@@ -80,7 +92,7 @@ public class PortfolioServiceImpl implements PortfolioService {
     @Transactional
     @Override
     public PortfolioDto save(@NotNull PortfolioDto dto) {
-        var currency = currencyRepository.findById(dto.getCurrencyCode())
+        var currency = referenceDataCache.findCurrency(dto.getCurrencyCode())
                 .orElseThrow(() -> new CurrencyNotFoundException(dto.getCurrencyCode()));
 
         var portfolio = portfolioRepository.findById(dto.getName()).orElseGet(Portfolio::new);
@@ -138,7 +150,7 @@ public class PortfolioServiceImpl implements PortfolioService {
     @Transactional(readOnly = true)
     @Override
     public List<InstrumentPositionDto> getInstrumentPositions(@Nullable String portfolioName) {
-        return portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
+        return portfolioRepository.findWithPositionsByName(getOrDefaultPortfolioName(portfolioName))
                 .map(Portfolio::getPositions)
                 .map(positions -> positions.stream()
                         .map(InstrumentPositionDto::from).collect(Collectors.toList()))
@@ -148,88 +160,203 @@ public class PortfolioServiceImpl implements PortfolioService {
     @Transactional(readOnly = true)
     @Override
     public List<OperationDto> getProcessedOperations(@Nullable String portfolioName) {
-        return portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
-                .map(Portfolio::getOperations)
-                .map(operations -> operations.stream()
-                        .sorted(Comparator.comparing(Operation::getWhenAdd, Comparator.reverseOrder()))
-                        .map(PortfolioServiceImpl::mapOperation)
-                        .collect(Collectors.toList()))
-                .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
+        var name = getOrDefaultPortfolioName(portfolioName);
+        if (!portfolioRepository.existsById(name)) {
+            throw new PortfolioNotFoundException(name);
+        }
+        return operationRepository.findProcessed(name, null, null, 0).stream()
+                .map(PortfolioServiceImpl::mapOperation)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public OperationsPageDto getProcessedOperations(@Nullable String portfolioName, @Nullable OperationsFilterDto filter,
+                                                    @Nullable Long afterId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit of operations should be positive: " + limit);
+        }
+        var name = getOrDefaultPortfolioName(portfolioName);
+        if (!portfolioRepository.existsById(name)) {
+            throw new PortfolioNotFoundException(name);
+        }
+        // one more operation is loaded to know if there is next page
+        var after = isNull(afterId) ? null : operationRepository.findById(afterId)
+                .orElseThrow(() -> new OperationNotFoundException(afterId));
+        var operations = operationRepository.findProcessed(name, filter, after, limit + 1);
+        var dto = new OperationsPageDto();
+        operations.stream().limit(limit).map(PortfolioServiceImpl::mapOperation).forEach(dto.getOperations()::add);
+        if (operations.size() > limit) {
+            dto.setNextAfterId(operations.get(limit - 1).getId());
+        }
+        return dto;
     }
 
     @Transactional(readOnly = true)
     @Override
     public PortfolioInstrumentsDistributionDto getInstrumentsDistributionByAccoutingPrice(String portfolioName) {
-        return portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
-                .map(Portfolio::getPositions)
-                .map(positions -> positions.stream()
-                        .filter(position -> !position.getExcludeFromDistribution())
-                        .collect(Collectors.toList()))
-                .map(positions -> PortfolioInstrumentsDistributionDto.byAccountingPrice(positions,
-                        applicationConfig.getBigdecimalOperationsScale()))
+        var name = getOrDefaultPortfolioName(portfolioName);
+        var positions = portfolioRepository.findWithPositionsByName(name)
+                .map(PortfolioServiceImpl::getDistributedPositions)
                 .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
+        return recordDistribution(DistributionEvent.ACCOUNTING_PRICE, name, positions.size(),
+                () -> PortfolioInstrumentsDistributionDto.byAccountingPrice(positions,
+                        applicationConfig.getBigdecimalOperationsScale()));
     }
 
     @Transactional(readOnly = true)
     @Override
     public PortfolioInstrumentsDistributionDto getInstrumentsDistributionByActualPrice(String portfolioName, LocalDateTime date) {
-        Map<Instrument, BigDecimal> actualPrices = instrumentPriceRepository
-                .findByWhenAddLessThanEqualOrderByWhenAddDesc(ofNullable(date).orElseGet(LocalDateTime::now))
-                .stream()
-                .collect(Collectors.toMap(InstrumentPrice::getInstrument, InstrumentPrice::getPrice, (a, b) -> a));
-        return portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
-                .map(Portfolio::getPositions)
-                .map(positions -> positions.stream()
-                        .filter(position -> !position.getExcludeFromDistribution())
-                        .collect(Collectors.toList()))
-                .map(positions -> PortfolioInstrumentsDistributionDto.byActualPrice(positions,
-                        actualPrices, applicationConfig.getBigdecimalOperationsScale()))
+        var name = getOrDefaultPortfolioName(portfolioName);
+        var positions = portfolioRepository.findWithPositionsByName(name)
+                .map(PortfolioServiceImpl::getDistributedPositions)
                 .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
+        return recordDistribution(DistributionEvent.ACTUAL_PRICE, name, positions.size(),
+                () -> PortfolioInstrumentsDistributionDto.byActualPrice(positions,
+                        getActualPrices(positions, ofNullable(date).orElseGet(LocalDateTime::now)),
+                        applicationConfig.getBigdecimalOperationsScale()));
     }
 
     @Transactional(readOnly = true)
     @Override
     public PortfolioInstrumentsDistributionDto getTargetInstrumentsDistribution(String portfolioName) {
-        return portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
+        return portfolioRepository.findWithTargetDistributionsByName(getOrDefaultPortfolioName(portfolioName))
                 .map(PortfolioInstrumentsDistributionDto::byTargetPercent)
                 .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
     }
 
+    @Transactional(readOnly = true)
+    @Override
+    public PortfolioDashboardDto getDashboard(@Nullable String portfolioName, @Nullable LocalDateTime date) {
+        var portfolio = portfolioRepository.findWithPositionsByName(getOrDefaultPortfolioName(portfolioName))
+                .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
+        return recordDistribution(DistributionEvent.DASHBOARD, portfolio.getName(), portfolio.getPositions().size(),
+                () -> PortfolioDashboardDto.from(portfolio,
+                        getActualPrices(getDistributedPositions(portfolio), ofNullable(date).orElseGet(LocalDateTime::now)),
+                        applicationConfig.getBigdecimalOperationsScale()));
+    }
+
     @Transactional(readOnly = true)
     @Override
     public PortfolioRebalancePropositionDto getRebalanceProposition(String portfolioName, boolean useAvailableMoney) {
-        return portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
+        return portfolioRepository.findWithPositionsByName(getOrDefaultPortfolioName(portfolioName))
                 .map(portfolio -> rebalanceHelper.rebalance(portfolio, useAvailableMoney))
                 .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
     }
 
-    @Transactional
     @Override
     public void reinit(@NotBlank String portfolioName) {
-        var portfolio = portfolioRepository.findById(portfolioName)
-                .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
-        operationRepository.deleteAll(portfolio.getOperations());
-        portfolio.getPositions().clear();
-        portfolio.setAvailableMoney(BigDecimal.ZERO);
-        portfolioRepository.save(portfolio);
+        lockManager.execute(portfolioName, () -> {
+            var portfolio = portfolioRepository.findById(portfolioName)
+                    .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
+            operationRepository.deleteAll(portfolio.getOperations());
+            snapshotRepository.deleteAllOfPortfolio(portfolio);
+            portfolio.clearPositions();
+            portfolio.setAvailableMoney(BigDecimal.ZERO);
+            portfolioRepository.save(portfolio);
+            return null;
+        });
     }
 
-    @Transactional
     @Override
     public void toggleExcludeInstrumentFromDistribution(@NotBlank String symbol, String portfolioName) {
-        var portfolio = portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
-                .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
-        var position = portfolio.getPositions().stream()
-                .filter(instrumentPosition -> symbol.equals(instrumentPosition.getInstrument().getSymbol()))
-                .findFirst()
-                .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(), symbol));
-        var currentValue = position.getExcludeFromDistribution();
-        position.setExcludeFromDistribution(!currentValue);
-        portfolioRepository.save(portfolio);
+        var name = getOrDefaultPortfolioName(portfolioName);
+        lockManager.execute(name, () -> {
+            var portfolio = portfolioRepository.findWithPositionsByName(name)
+                    .orElseThrow(() -> new PortfolioNotFoundException(name));
+            var position = portfolio.findPosition(symbol)
+                    .orElseThrow(() -> new InstrumentPositionNotFoundException(portfolio.getName(), symbol));
+            var currentValue = position.getExcludeFromDistribution();
+            position.setExcludeFromDistribution(!currentValue);
+            portfolioRepository.save(portfolio);
+            return null;
+        });
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public Optional<PortfolioDto> getPortfolioAt(@NotBlank String name, @NotNull LocalDateTime date) {
+        return portfolioRepository.findById(name)
+                .map(portfolio -> rebuildHelper.getStateAt(portfolio, date))
+                .map(PortfolioDto::fromPortfolio);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public List<InstrumentPositionDto> getInstrumentPositionsAt(@Nullable String portfolioName,
+                                                                @NotNull LocalDateTime date) {
+        return getStateAt(portfolioName, date).getPositions().stream()
+                .map(InstrumentPositionDto::from).collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public PortfolioInstrumentsDistributionDto getInstrumentsDistributionByAccountingPriceAt(@Nullable String portfolioName,
+                                                                                             @NotNull LocalDateTime date) {
+        var state = getStateAt(portfolioName, date);
+        var positions = getDistributedPositions(state);
+        return recordDistribution(DistributionEvent.ACCOUNTING_PRICE, state.getName(), positions.size(),
+                () -> PortfolioInstrumentsDistributionDto.byAccountingPrice(positions,
+                        applicationConfig.getBigdecimalOperationsScale()));
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public PortfolioInstrumentsDistributionDto getInstrumentsDistributionByActualPriceAt(@Nullable String portfolioName,
+                                                                                         @NotNull LocalDateTime date) {
+        var state = getStateAt(portfolioName, date);
+        var positions = getDistributedPositions(state);
+        return recordDistribution(DistributionEvent.ACTUAL_PRICE, state.getName(), positions.size(),
+                () -> PortfolioInstrumentsDistributionDto.byActualPrice(positions, getActualPrices(positions, date),
+                        applicationConfig.getBigdecimalOperationsScale()));
+    }
+
+    /** Snapshot is created holding lock of portfolio, so backdated operation can't be added between replay and save. */
+    @Override
+    public String createSnapshot(@Nullable String portfolioName, @NotNull LocalDateTime date) {
+        var name = getOrDefaultPortfolioName(portfolioName);
+        return lockManager.execute(name, () -> {
+            var portfolio = portfolioRepository.findById(name)
+                    .orElseThrow(() -> new PortfolioNotFoundException(name));
+            return describeSnapshot(rebuildHelper.createSnapshot(portfolio, date));
+        });
+    }
+
+    @Override
+    public List<String> createMonthlySnapshots(@Nullable String portfolioName) {
+        var name = getOrDefaultPortfolioName(portfolioName);
+        return lockManager.execute(name, () -> {
+            var portfolio = portfolioRepository.findById(name)
+                    .orElseThrow(() -> new PortfolioNotFoundException(name));
+            return rebuildHelper.createMonthlySnapshots(portfolio).stream()
+                    .map(PortfolioServiceImpl::describeSnapshot)
+                    .collect(Collectors.toList());
+        });
+    }
+
+    @Override
+    public List<String> rebuild(@Nullable String portfolioName) {
+        var name = getOrDefaultPortfolioName(portfolioName);
+        if (!portfolioRepository.existsById(name)) {
+            throw new PortfolioNotFoundException(name);
+        }
+        return rebuildHelper.rebuild(List.of(name));
+    }
+
+    @Override
+    public List<String> rebuildAll() {
+        return rebuildHelper.rebuild(portfolioRepository.findAll().stream()
+                .map(Portfolio::getName).collect(Collectors.toList()));
     }
 
     // todo may be create mapper class
     private static OperationDto mapOperation(Operation operation) {
+        var dto = mapOperationByType(operation);
+        dto.setId(operation.getId());
+        return dto;
+    }
+
+    private static OperationDto mapOperationByType(Operation operation) {
         switch (operation.getType()) {
             case ADD_MONEY:
                 return AddMoneyDto.from(operation);
@@ -247,11 +374,52 @@ public class PortfolioServiceImpl implements PortfolioService {
                 return BondRedemptionDto.from(operation);
             case TAX:
                 return TaxDto.from(operation);
+            case INSTRUMENT_CONVERSION:
+                return InstrumentConversionDto.from(operation);
             default:
                 throw new UnsupportedOperationException(operation.getType().name());
         }
     }
 
+    private Portfolio getStateAt(@Nullable String portfolioName, LocalDateTime date) {
+        return portfolioRepository.findById(getOrDefaultPortfolioName(portfolioName))
+                .map(portfolio -> rebuildHelper.getStateAt(portfolio, date))
+                .orElseThrow(() -> new PortfolioNotFoundException(portfolioName));
+    }
+
+    private static List<InstrumentPosition> getDistributedPositions(Portfolio portfolio) {
+        return portfolio.getPositions().stream()
+                .filter(position -> !position.getExcludeFromDistribution())
+                .collect(Collectors.toList());
+    }
+
+    /** Compute distribution of portfolio positions, computation is recorded as JFR event. */
+    private static <T> T recordDistribution(String distribution, String portfolioName, int positions,
+                                            Supplier<T> computation) {
+        var event = new DistributionEvent();
+        event.begin();
+        var result = computation.get();
+        if (event.shouldCommit()) {
+            event.setPortfolioName(portfolioName);
+            event.setDistribution(distribution);
+            event.setPositions(positions);
+            event.commit();
+        }
+        return result;
+    }
+
+    private static String describeSnapshot(PortfolioSnapshot snapshot) {
+        return "Snapshot of portfolio " + snapshot.getPortfolio().getName() + " at " + snapshot.getSnapshotDate()
+                + ": available money " + snapshot.getAvailableMoney()
+                + ", positions: " + snapshot.getPositions().size();
+    }
+
+    /** Get latest prices at date only for instruments in positions. */
+    private Map<Instrument, BigDecimal> getActualPrices(List<InstrumentPosition> positions, LocalDateTime date) {
+        var instruments = positions.stream().map(InstrumentPosition::getInstrument).collect(Collectors.toSet());
+        return instrumentPriceCache.getPrices(instruments, date);
+    }
+
     private String getOrDefaultPortfolioName(@Nullable String name) {
         return ofNullable(ofNullable(name).orElseGet(applicationConfig::getDefaultPortfolioName))
                 .orElseThrow(() -> new IllegalArgumentException("Portfolio name is null and default portfolio is not set!"));
@@ -262,7 +430,7 @@ public class PortfolioServiceImpl implements PortfolioService {
                 .filter(StringUtils::hasText)
                 .map(d -> d.split(","))
                 .map(t -> Arrays.stream(t).map(m -> m.split("-"))
-                        .collect(Collectors.toMap(x -> instrumentCategoryRepository.findById(x[0])
+                        .collect(Collectors.toMap(x -> referenceDataCache.findCategory(x[0])
                                         .orElseThrow(() -> new InstrumentCategoryNotFoundException(x[0])),
                                 x -> new BigDecimal(x[1]))))
                 .orElseGet(Collections::emptyMap);
@@ -0,0 +1,23 @@
+package ru.valeo.jim.service.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Getter;
+import lombok.Setter;
+
+@Name("ru.valeo.jim.AccountingPrice")
+@Label("Accounting Price Recalculation")
+@Description("Accounting prices of positions recalculated from operations log by replay or check")
+@Getter
+@Setter
+public class AccountingPriceEvent extends PortfolioEvent {
+    public static final String REPLAY = "replay";
+    public static final String CHECK = "check";
+
+    @Label("Source")
+    private String source;
+
+    @Label("Positions")
+    private int positions;
+}
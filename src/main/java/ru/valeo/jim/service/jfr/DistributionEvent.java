@@ -0,0 +1,24 @@
+package ru.valeo.jim.service.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Getter;
+import lombok.Setter;
+
+@Name("ru.valeo.jim.Distribution")
+@Label("Instruments Distribution")
+@Description("Distribution of portfolio positions by categories, including lookup of actual prices")
+@Getter
+@Setter
+public class DistributionEvent extends PortfolioEvent {
+    public static final String ACCOUNTING_PRICE = "accounting price";
+    public static final String ACTUAL_PRICE = "actual price";
+    public static final String DASHBOARD = "dashboard";
+
+    @Label("Distribution")
+    private String distribution;
+
+    @Label("Positions")
+    private int positions;
+}
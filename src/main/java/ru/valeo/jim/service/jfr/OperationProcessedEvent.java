@@ -0,0 +1,18 @@
+package ru.valeo.jim.service.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Getter;
+import lombok.Setter;
+
+@Name("ru.valeo.jim.OperationProcessed")
+@Label("Operation Processed")
+@Description("New operation applied to portfolio state and saved")
+@Getter
+@Setter
+public class OperationProcessedEvent extends PortfolioEvent {
+
+    @Label("Instrument")
+    private String symbol;
+}
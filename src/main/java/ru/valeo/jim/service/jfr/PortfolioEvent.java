@@ -0,0 +1,27 @@
+package ru.valeo.jim.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import lombok.Getter;
+import lombok.Setter;
+
+/** Base of Java Flight Recorder events of portfolio computations, event duration is time of computation.
+ * Events are cheap when not recorded: fields should be set only if {@link #shouldCommit()}.
+ * Fields are protected: JFR records only non-private fields of event superclasses. */
+@Category({"JIM", "Portfolio"})
+@StackTrace(false)
+@Getter
+@Setter
+public abstract class PortfolioEvent extends Event {
+
+    @Label("Portfolio")
+    protected String portfolioName;
+
+    @Label("Operation Type")
+    protected String operationType;
+
+    @Label("Operations Scanned")
+    protected long operationsScanned;
+}
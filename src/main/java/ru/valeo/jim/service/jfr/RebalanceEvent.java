@@ -0,0 +1,24 @@
+package ru.valeo.jim.service.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Getter;
+import lombok.Setter;
+
+@Name("ru.valeo.jim.Rebalance")
+@Label("Rebalance Proposition")
+@Description("Buy and sell operations by categories proposed to reach target distribution")
+@Getter
+@Setter
+public class RebalanceEvent extends PortfolioEvent {
+
+    @Label("Positions")
+    private int positions;
+
+    @Label("Use Available Money")
+    private boolean useAvailableMoney;
+
+    @Label("Proposed Operations")
+    private int proposedOperations;
+}
@@ -5,6 +5,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import ru.valeo.jim.config.ApplicationConfig;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
 
@@ -23,7 +24,7 @@ public class DateTimeHelper {
                     try {
                         return LocalDateTime.parse(text, applicationConfig.getOperationWhenAddFormatter());
                     } catch (DateTimeParseException ignored) {
-                        return LocalDateTime.parse(text, applicationConfig.getDefaultDateFormatter());
+                        return LocalDate.parse(text, applicationConfig.getDefaultDateFormatter()).atStartOfDay();
                     }
                 })
                 .orElse(null);
@@ -0,0 +1,30 @@
+package ru.valeo.jim.service.util;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/** Allocates ids for JDBC inserts with the same pooled scheme as Hibernate sequence generators of entities:
+ * value V of sequence reserves ids from V - ALLOCATION_SIZE + 1 to V. */
+@RequiredArgsConstructor
+@Component
+public class SequenceIdAllocator {
+
+    /** Increment of id sequences and allocation size of entities generators. */
+    public static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Allocate count of ids from sequence, one sequence call for each ALLOCATION_SIZE ids. */
+    public long[] allocate(String sequenceName, int count) {
+        var ids = new long[count];
+        var i = 0;
+        while (i < count) {
+            long hi = jdbcTemplate.queryForObject("select next value for " + sequenceName, Long.class);
+            for (var id = hi - ALLOCATION_SIZE + 1; id <= hi && i < count; id++) {
+                ids[i++] = id;
+            }
+        }
+        return ids;
+    }
+}
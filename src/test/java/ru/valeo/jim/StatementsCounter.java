@@ -0,0 +1,55 @@
+package ru.valeo.jim;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Guard rail against lazy loading and N+1 regressions: asserts upper bound of SQL statements prepared by action.
+ * Test of Spring context gets counter as parameter with {@code @ExtendWith(StatementsCounter.Extension.class)},
+ * Hibernate statistics must be enabled in test application.yml. */
+public class StatementsCounter {
+
+    private final Statistics statistics;
+
+    public StatementsCounter(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /** Run action and check it prepared no more than maxStatements statements.
+     * @return result of action */
+    public <T> T assertAtMost(long maxStatements, Supplier<T> action) {
+        statistics.clear();
+        var result = action.get();
+        var statements = statistics.getPrepareStatementCount();
+        assertTrue(statements <= maxStatements,
+                () -> "Expected at most " + maxStatements + " statements, but was " + statements +
+                        ", collections fetched lazily " + statistics.getCollectionFetchCount() +
+                        ", entities fetched lazily " + statistics.getEntityFetchCount());
+        return result;
+    }
+
+    public static class Extension implements ParameterResolver {
+
+        @Override
+        public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+            return parameterContext.getParameter().getType() == StatementsCounter.class;
+        }
+
+        @Override
+        public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+            var statistics = SpringExtension.getApplicationContext(extensionContext)
+                    .getBean(EntityManagerFactory.class)
+                    .unwrap(SessionFactory.class)
+                    .getStatistics();
+            return new StatementsCounter(statistics);
+        }
+    }
+}
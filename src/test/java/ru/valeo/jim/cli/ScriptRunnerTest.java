@@ -0,0 +1,241 @@
+package ru.valeo.jim.cli;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.valeo.jim.dto.InstrumentDto;
+import ru.valeo.jim.dto.InstrumentPositionDto;
+import ru.valeo.jim.dto.PortfolioDto;
+import ru.valeo.jim.dto.operation.AddMoneyDto;
+import ru.valeo.jim.service.InstrumentsPriceService;
+import ru.valeo.jim.service.InstrumentsService;
+import ru.valeo.jim.service.OperationsService;
+import ru.valeo.jim.service.PortfolioService;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ScriptRunnerTest {
+
+    @Autowired
+    private ScriptRunner scriptRunner;
+    @Autowired
+    private BatchScriptApplicationRunner batchScriptApplicationRunner;
+    @Autowired
+    private PortfolioService portfolioService;
+    @Autowired
+    private InstrumentsService instrumentsService;
+    @Autowired
+    private InstrumentsPriceService instrumentsPriceService;
+    @Autowired
+    private OperationsService operationsService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void shouldExecuteScriptInBatchesAndReportFailedLines() {
+        var name = createPortfolio();
+        createInstrument("SCRSHR");
+        var script = String.join("\n",
+                "# prices and operations are committed in batches",
+                "add-price --symbol SCRSHR --price 10 --accumulated-coupon-income 0",
+                "",
+                "add-price --symbol SCRSHR --price 11 --accumulated-coupon-income 0",
+                "add-price --symbol SCRSHR --price 12 --accumulated-coupon-income 0",
+                "unknown-command",
+                "add-money --amount 100 --portfolio-name " + name,
+                "buy-instrument --symbol SCRSHR --price 10 --amount 2 --portfolio-name " + name,
+                "buy-instrument --symbol SCRSHR --price 10 --amount 20 --portfolio-name " + name,
+                "buy-instrument --symbol SCRSHR --price 10 --amount 3 --portfolio-name " + name,
+                "sell-instrument --symbol SCRSHR --price 20 --amount 1 --portfolio-name " + name);
+
+        var result = scriptRunner.run(new StringReader(script), 2);
+
+        assertEquals(7, result.getExecuted());
+        assertEquals(2, result.getFailed());
+        assertEquals(5, result.getBatches());
+        assertTrue(result.getErrors().get(0).startsWith("line 6 (unknown-command): "));
+        assertTrue(result.getErrors().get(1).startsWith("line 9 (buy-instrument): "));
+        assertEquals(3, instrumentsPriceService.get("SCRSHR").size());
+        assertEquals(0, new BigDecimal("70").compareTo(
+                portfolioService.getPortfolio(name).orElseThrow().getAvailableMoney()));
+        assertEquals(4, getPosition(name, "SCRSHR").getAmount());
+        assertEquals(4, portfolioService.getProcessedOperations(name).size());
+    }
+
+    @Test
+    void shouldRunStandaloneCommandsAfterCommitOfBatch() {
+        var name = createPortfolio();
+        var script = String.join("\n",
+                "save-share --symbol SCRSHR1 --name SCRSHR1 --currency USD --category SHR",
+                "add-price --symbol SCRSHR1 --price 10 --accumulated-coupon-income 0",
+                "add-money --amount 100 --portfolio-name " + name,
+                "buy-instrument --symbol SCRSHR1 --price 10 --amount 2 --portfolio-name " + name,
+                "rebuild-portfolio --name " + name,
+                "buy-instrument --symbol SCRSHR1 --price 10 --amount 1 --portfolio-name " + name);
+
+        var result = scriptRunner.run(new StringReader(script), 100);
+
+        assertEquals(6, result.getExecuted());
+        assertEquals(0, result.getFailed());
+        assertEquals(2, result.getBatches());
+        assertEquals(3, getPosition(name, "SCRSHR1").getAmount());
+    }
+
+    @Test
+    void shouldCommitOperationsByBatchAndReplayFailedBatch() {
+        var name = createPortfolio();
+        createInstrument("SCRSHR3");
+        var lines = new ArrayList<String>();
+        lines.add("add-money --amount 1000 --portfolio-name " + name);
+        for (var i = 1; i < 40; i++) {
+            lines.add("buy-instrument --symbol SCRSHR3 --price 10 --amount " + (i == 25 ? 1000 : 1) +
+                    " --portfolio-name " + name);
+        }
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        var result = scriptRunner.run(new StringReader(String.join("\n", lines)), 10);
+
+        // 4 batches and 10 commands of failed batch replayed in own transactions instead of 40 transactions
+        var transactions = statistics.getTransactionCount();
+        assertTrue(transactions <= 14, () -> "Expected at most 14 transactions, but was " + transactions);
+        assertEquals(39, result.getExecuted());
+        assertEquals(1, result.getFailed());
+        assertEquals(4, result.getBatches());
+        assertTrue(result.getErrors().get(0).startsWith("line 26 (buy-instrument): "));
+        assertEquals(0, new BigDecimal("620").compareTo(
+                portfolioService.getPortfolio(name).orElseThrow().getAvailableMoney()));
+        assertEquals(38, getPosition(name, "SCRSHR3").getAmount());
+        assertEquals(39, portfolioService.getProcessedOperations(name).size());
+    }
+
+    @Test
+    void shouldLogOperationsByPages() {
+        var name = createPortfolio();
+        var script = String.join("\n",
+                "add-money --amount 1 --portfolio-name " + name,
+                "add-money --amount 2 --portfolio-name " + name,
+                "add-money --amount 3 --portfolio-name " + name,
+                "log-operations --limit 2 --portfolio-name " + name,
+                "log-operations --portfolio-name " + UUID.randomUUID());
+
+        var result = scriptRunner.run(new StringReader(script), 1);
+
+        assertEquals(4, result.getExecuted());
+        assertEquals(1, result.getFailed());
+        assertTrue(result.getErrors().get(0).startsWith("line 5 (log-operations): "));
+    }
+
+    @Test
+    void whenCommandReturnsError_shouldReportLineAsFailed(@TempDir Path dir) throws Exception {
+        var name = createPortfolio();
+        var report = dir.resolve("report.csv");
+        Files.writeString(report, "ADD_MONEY,,,10,,,2021-01-01 10:00:00\n" +
+                "BUY,NOSUCHSYMBOL,1,5,,,2021-01-02 10:00:00\n");
+        var script = String.join("\n",
+                "delete-operation --id " + Long.MAX_VALUE,
+                "import-operations --file " + dir.resolve("missing.csv") + " --portfolio-name " + name,
+                "import-operations --file " + report + " --portfolio-name " + name,
+                "save-portfolio --name " + name + " --currency NOSUCHCURRENCY",
+                "add-money --amount 1 --portfolio-name " + name);
+
+        var result = scriptRunner.run(new StringReader(script), 10);
+
+        assertEquals(1, result.getExecuted());
+        assertEquals(4, result.getFailed());
+        assertTrue(result.getErrors().get(0).startsWith("line 1 (delete-operation): "));
+        assertTrue(result.getErrors().get(1).startsWith("line 2 (import-operations): "));
+        assertTrue(result.getErrors().get(2).startsWith("line 3 (import-operations): "));
+        assertTrue(result.getErrors().get(3).startsWith("line 4 (save-portfolio): "));
+        // rows of partially failed import are still imported
+        assertEquals(0, new BigDecimal("11").compareTo(
+                portfolioService.getPortfolio(name).orElseThrow().getAvailableMoney()));
+    }
+
+    @Test
+    void whenPortfolioChangedWhileScriptRuns_shouldNotLoseOperations() throws Exception {
+        var name = createPortfolio();
+        createInstrument("SCRSHR2");
+        var lines = new ArrayList<String>();
+        for (var i = 0; i < 50; i++) {
+            lines.add("add-price --symbol SCRSHR2 --price " + (10 + i % 3) + " --accumulated-coupon-income 0");
+            lines.add("add-money --amount 10 --portfolio-name " + name);
+            lines.add("buy-instrument --symbol SCRSHR2 --price 10 --amount 1 --portfolio-name " + name);
+        }
+        var writer = Executors.newSingleThreadExecutor();
+        try {
+            var written = writer.submit(() -> {
+                for (var i = 0; i < 50; i++) {
+                    operationsService.addMoney(AddMoneyDto.builder().portfolioName(name).value(BigDecimal.ONE).build());
+                }
+            });
+
+            var result = scriptRunner.run(new StringReader(String.join("\n", lines)), 20);
+            written.get(60, TimeUnit.SECONDS);
+
+            assertEquals(150, result.getExecuted());
+            assertEquals(0, result.getFailed());
+        } finally {
+            writer.shutdownNow();
+        }
+        assertEquals(0, new BigDecimal("50").compareTo(
+                portfolioService.getPortfolio(name).orElseThrow().getAvailableMoney()));
+        assertEquals(50, getPosition(name, "SCRSHR2").getAmount());
+        assertEquals(150, portfolioService.getProcessedOperations(name).size());
+        assertEquals(50, instrumentsPriceService.get("SCRSHR2").size());
+    }
+
+    @Test
+    void shouldRunScriptFromArgumentsWithExitCode(@TempDir Path dir) throws Exception {
+        var name = createPortfolio();
+        var script = dir.resolve("ops.jim");
+        Files.writeString(script, "add-money --amount 5 --portfolio-name " + name + "\n" +
+                "withdraw-money --amount 10 --portfolio-name " + name + "\n");
+
+        batchScriptApplicationRunner.run(new DefaultApplicationArguments("--script", script.toString()));
+
+        assertEquals(1, batchScriptApplicationRunner.getExitCode());
+        assertEquals(0, new BigDecimal("5").compareTo(
+                portfolioService.getPortfolio(name).orElseThrow().getAvailableMoney()));
+    }
+
+    private InstrumentPositionDto getPosition(String portfolioName, String symbol) {
+        return portfolioService.getInstrumentPositions(portfolioName).stream()
+                .filter(position -> position.getSymbol().equals(symbol))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private String createPortfolio() {
+        var dto = new PortfolioDto();
+        dto.setName(UUID.randomUUID().toString());
+        dto.setCurrencyCode("USD");
+        dto.setAvailableMoney(BigDecimal.ZERO);
+        return portfolioService.save(dto).getName();
+    }
+
+    private void createInstrument(String symbol) {
+        var dto = new InstrumentDto();
+        dto.setSymbol(symbol);
+        dto.setName(symbol + " LLC");
+        dto.setType("SHARE");
+        dto.setBaseCurrencyCode("USD");
+        dto.setCategoryCode("SHR");
+        instrumentsService.save(dto);
+    }
+}
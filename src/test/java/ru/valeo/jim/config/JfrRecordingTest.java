@@ -0,0 +1,109 @@
+package ru.valeo.jim.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.valeo.jim.dto.InstrumentDto;
+import ru.valeo.jim.dto.PortfolioDto;
+import ru.valeo.jim.dto.operation.AddMoneyDto;
+import ru.valeo.jim.dto.operation.BuyInstrumentDto;
+import ru.valeo.jim.service.InstrumentsService;
+import ru.valeo.jim.service.OperationsService;
+import ru.valeo.jim.service.PortfolioService;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class JfrRecordingTest {
+
+    @Autowired
+    private PortfolioService portfolioService;
+    @Autowired
+    private OperationsService operationsService;
+    @Autowired
+    private InstrumentsService instrumentsService;
+
+    @Test
+    void shouldRecordEventsWithPortfolioContext(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("jim.jfr");
+        var config = new ApplicationConfig();
+        config.setJfrRecordingFile(file.toString());
+        config.setJfrRecordingSettings("default");
+        var portfolio = createPortfolio();
+        var instrument = createInstrument();
+
+        var recording = new JfrRecording(config);
+        try {
+            operationsService.addMoney(AddMoneyDto.builder()
+                    .portfolioName(portfolio.getName())
+                    .value(new BigDecimal("100"))
+                    .build());
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(portfolio.getName())
+                    .symbol(instrument.getSymbol())
+                    .amount(2)
+                    .price(BigDecimal.TEN)
+                    .build());
+            operationsService.checkAccountingPrices(portfolio.getName());
+            portfolioService.rebuild(portfolio.getName());
+            portfolioService.getDashboard(portfolio.getName(), LocalDateTime.now());
+            portfolioService.getRebalanceProposition(portfolio.getName(), true);
+        } finally {
+            recording.stop();
+        }
+
+        var events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("ru.valeo.jim."))
+                .filter(event -> portfolio.getName().equals(event.getString("portfolioName")))
+                .collect(Collectors.toList());
+        var operations = byName(events, "ru.valeo.jim.OperationProcessed");
+        var accountingPrices = byName(events, "ru.valeo.jim.AccountingPrice");
+
+        assertEquals(2, operations.size());
+        assertEquals("BUY", operations.get(1).getString("operationType"));
+        assertEquals(instrument.getSymbol(), operations.get(1).getString("symbol"));
+        assertEquals(2, accountingPrices.size());
+        assertTrue(accountingPrices.stream().anyMatch(event -> event.getString("source").equals("replay")
+                && event.getLong("operationsScanned") == 2));
+        assertEquals(1, byName(events, "ru.valeo.jim.Distribution").size());
+        assertEquals(1, byName(events, "ru.valeo.jim.Rebalance").size());
+        assertTrue(events.stream().noneMatch(event -> event.getDuration().isNegative()));
+    }
+
+    private static List<RecordedEvent> byName(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted((first, second) -> first.getStartTime().compareTo(second.getStartTime()))
+                .collect(Collectors.toList());
+    }
+
+    private PortfolioDto createPortfolio() {
+        var dto = new PortfolioDto();
+        dto.setName(UUID.randomUUID().toString());
+        dto.setCurrencyCode("USD");
+        dto.setAvailableMoney(BigDecimal.ZERO);
+        dto.setCategoriesTargetDistribution("SHR-100");
+        return portfolioService.save(dto);
+    }
+
+    private InstrumentDto createInstrument() {
+        var dto = new InstrumentDto();
+        dto.setSymbol("JFRSHR");
+        dto.setName("JFR share LLC");
+        dto.setType("SHARE");
+        dto.setBaseCurrencyCode("USD");
+        dto.setCategoryCode("SHR");
+        return instrumentsService.save(dto);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.valeo.jim.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MoneyTest {
+
+    private static final int SCALE = 3;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100L);
+
+    @Test
+    void shouldDivideAsBigDecimal() {
+        var random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            var dividend = BigDecimal.valueOf(random.nextLong() % 100_000_000_000L, random.nextInt(6));
+            var divisor = 1 + random.nextInt(10_000);
+            assertEquals(dividend.divide(BigDecimal.valueOf(divisor), SCALE, RoundingMode.FLOOR),
+                    Money.divideFloor(dividend, divisor, SCALE), dividend + "/" + divisor);
+        }
+    }
+
+    @Test
+    void shouldSumAndCalcPercentsAsBigDecimal() {
+        var random = new Random(2);
+        for (int i = 0; i < 1_000; i++) {
+            var part = new Money.Sum(SCALE);
+            var total = new Money.Sum(SCALE);
+            var expectedPart = BigDecimal.ZERO;
+            var expectedTotal = BigDecimal.ZERO;
+            for (int j = 0; j < 20; j++) {
+                var price = BigDecimal.valueOf(random.nextInt(10_000_000), random.nextInt(SCALE + 2));
+                var amount = random.nextInt(1_000);
+                var product = price.multiply(BigDecimal.valueOf(amount));
+                total.addProduct(price, amount);
+                expectedTotal = expectedTotal.add(product);
+                if (random.nextBoolean()) {
+                    part.addProduct(price, amount);
+                    expectedPart = expectedPart.add(product);
+                }
+            }
+            assertEquals(expectedTotal, total.toBigDecimal());
+            assertEquals(expectedPart, part.toBigDecimal());
+            if (expectedTotal.signum() != 0) {
+                assertEquals(expectedPart.divide(expectedTotal, SCALE, RoundingMode.FLOOR).multiply(HUNDRED),
+                        part.percentOf(total, SCALE));
+            }
+        }
+    }
+
+    @Test
+    void shouldFallbackToBigDecimalOnOverflow() {
+        var sum = new Money.Sum(SCALE);
+        var price = new BigDecimal("9000000000000.5");
+
+        sum.addProduct(price, 1_000_000L);
+        sum.addProduct(BigDecimal.ONE, 1L);
+
+        assertEquals(new BigDecimal("9000000000000500001.0"), sum.toBigDecimal());
+    }
+
+    @Test
+    void shouldFallbackToBigDecimalOnExcessScale() {
+        var sum = new Money.Sum(SCALE);
+
+        sum.addProduct(new BigDecimal("0.12345"), 3L);
+        sum.addProduct(new BigDecimal("1.5"), 2L);
+
+        assertEquals(new BigDecimal("3.37035"), sum.toBigDecimal());
+        assertEquals(new BigDecimal("0.33333"),
+                Money.divideFloor(new BigDecimal("1.00000"), 3L, 5));
+        assertEquals(new BigDecimal("-0.334"), Money.divideFloor(new BigDecimal("-1.0000001"), 3L, SCALE));
+    }
+}
@@ -0,0 +1,225 @@
+package ru.valeo.jim.repository;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.Operation;
+import ru.valeo.jim.domain.OperationType;
+import ru.valeo.jim.domain.Portfolio;
+import ru.valeo.jim.dto.OperationsFilterDto;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+/** Checks plans of queries issued on history tables (operations, prices, positions, snapshots).
+ * SQL of repository methods and lazy collection loads is recorded from Hibernate while calling them,
+ * JDBC statements of services are checked as they are.
+ * Each of them must use an index, queries over a range of history - composite index which bounds the range.
+ * Small reference tables (portfolios, instruments, currencies) joined by fetch may be scanned. */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlansTest {
+
+    private static final String PORTFOLIO = "PLANS";
+    private static final String[] SYMBOLS = {"PLNSHR1", "PLNSHR2", "PLNSHR3", "PLNSHR4"};
+    private static final int OPERATIONS_PER_SYMBOL = 250;
+    private static final Pattern HISTORY_TABLE_SCAN = Pattern.compile("PUBLIC\\.(OPERATION|INSTRUMENT_PRICE|" +
+            "INSTRUMENT_POSITION|INSTRUMENT_CATEGORY_TARGET_DISTRIBUTION|PORTFOLIO_SNAPSHOT|" +
+            "PORTFOLIO_SNAPSHOT_POSITION)\\.tableScan");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private InstrumentPriceRepository priceRepository;
+    @Autowired
+    private OperationRepository operationRepository;
+    @Autowired
+    private PortfolioRepository portfolioRepository;
+    @Autowired
+    private PortfolioSnapshotRepository snapshotRepository;
+
+    /** Fill some history, so that optimizer has statistics like in real database. */
+    @BeforeAll
+    void fillHistory() {
+        jdbcTemplate.update("insert into portfolio (name, currency_id, available_money) values (?, 'RUB', 0)",
+                PORTFOLIO);
+        var operations = new ArrayList<Object[]>();
+        var prices = new ArrayList<Object[]>();
+        var date = LocalDateTime.of(2020, 1, 1, 10, 0);
+        for (String symbol : SYMBOLS) {
+            jdbcTemplate.update("insert into instrument (symbol, name, currency_id, type, category_id) " +
+                    "values (?, ?, 'RUB', 'SHARE', 'GOVB')", symbol, symbol);
+            for (int i = 0; i < OPERATIONS_PER_SYMBOL; i++) {
+                var whenAdd = Timestamp.valueOf(date.plusDays(i));
+                operations.add(new Object[]{symbol, whenAdd});
+                prices.add(new Object[]{symbol, whenAdd});
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into operation (id, type, portfolio_id, instrument_id, amount, price, " +
+                "deleted, processed, when_add) values (next value for operation_seq, 'BUY', '" + PORTFOLIO +
+                "', ?, 1, 1, false, true, ?)", operations);
+        jdbcTemplate.batchUpdate("insert into instrument_price " +
+                "(id, instrument_id, price, accumulated_coupon_income, when_add) " +
+                "values (next value for instrument_price_seq, ?, 1, 0, ?)", prices);
+        var snapshots = new ArrayList<Object[]>();
+        for (int i = 0; i < OPERATIONS_PER_SYMBOL / 30; i++) {
+            snapshots.add(new Object[]{Timestamp.valueOf(date.plusMonths(i))});
+        }
+        jdbcTemplate.batchUpdate("insert into portfolio_snapshot (id, portfolio_id, snapshot_date, available_money) " +
+                "values (next value for portfolio_snapshot_seq, '" + PORTFOLIO + "', ?, 0)", snapshots);
+        jdbcTemplate.execute("analyze");
+    }
+
+    @AfterAll
+    void deleteHistory() {
+        jdbcTemplate.update("delete from operation where portfolio_id = ?", PORTFOLIO);
+        jdbcTemplate.update("delete from portfolio_snapshot where portfolio_id = ?", PORTFOLIO);
+        jdbcTemplate.update("delete from portfolio where name = ?", PORTFOLIO);
+        for (String symbol : SYMBOLS) {
+            jdbcTemplate.update("delete from instrument_price where instrument_id = ?", symbol);
+            jdbcTemplate.update("delete from instrument where symbol = ?", symbol);
+        }
+    }
+
+    /** Repository methods and lazy loads, their SQL is recorded from Hibernate. */
+    Stream<Arguments> repositoryQueries() {
+        var from = LocalDateTime.of(2021, 1, 1, 0, 0);
+        return Stream.of(
+                arguments("InstrumentPriceRepository.findByInstrument",
+                        (Runnable) () -> priceRepository.findByInstrument(instrument(SYMBOLS[0])), null),
+                arguments("InstrumentPriceRepository.findLatestByInstruments",
+                        (Runnable) () -> priceRepository.findLatestByInstruments(
+                                List.of(instrument(SYMBOLS[0]), instrument(SYMBOLS[1])), from),
+                        "IDX_INSTRUMENT_PRICE_INSTRUMENT_WHEN_ADD"),
+                arguments("OperationRepository.findProcessed first page",
+                        (Runnable) () -> operationRepository.findProcessed(PORTFOLIO, null, null, 100),
+                        "IDX_OPERATION_PORTFOLIO_DELETED_WHEN_ADD_ID"),
+                arguments("OperationRepository.findProcessed next page",
+                        (Runnable) () -> operationRepository.findProcessed(PORTFOLIO, null,
+                                new Operation().setWhenAdd(from).setId(10L), 100),
+                        "IDX_OPERATION_PORTFOLIO_DELETED_WHEN_ADD_ID"),
+                arguments("OperationRepository.findProcessed by type",
+                        (Runnable) () -> operationRepository.findProcessed(PORTFOLIO, OperationsFilterDto.builder()
+                                .type(OperationType.BUY).from(from).build(), null, 100),
+                        "IDX_OPERATION_PORTFOLIO_TYPE_WHEN_ADD"),
+                arguments("OperationRepository.findProcessed by instrument",
+                        (Runnable) () -> operationRepository.findProcessed(PORTFOLIO, OperationsFilterDto.builder()
+                                .symbol(SYMBOLS[0]).build(), null, 100),
+                        "IDX_OPERATION_PORTFOLIO_INSTRUMENT_WHEN_ADD"),
+                arguments("OperationRepository.findPortfolioNameById",
+                        (Runnable) () -> operationRepository.findPortfolioNameById(1L), null),
+                arguments("OperationRepository.existsConversionAfter",
+                        (Runnable) () -> operationRepository.existsConversionAfter(portfolio(),
+                                instrument(SYMBOLS[0]), from, 10L),
+                        "IDX_OPERATION_PORTFOLIO_TYPE_WHEN_ADD"),
+                arguments("PortfolioRepository.findWithPositionsByName",
+                        (Runnable) () -> portfolioRepository.findWithPositionsByName(PORTFOLIO), null),
+                arguments("PortfolioRepository.findWithTargetDistributionsByName",
+                        (Runnable) () -> portfolioRepository.findWithTargetDistributionsByName(PORTFOLIO), null),
+                arguments("Portfolio.positions and Portfolio.categoryTargetDistributions lazy loads",
+                        (Runnable) () -> {
+                            var portfolio = portfolio();
+                            portfolio.getPositions().size();
+                            portfolio.getCategoryTargetDistributions().size();
+                        }, null),
+                arguments("PortfolioSnapshotRepository.findFirst...OrderBySnapshotDateDesc and positions lazy load",
+                        (Runnable) () -> snapshotRepository
+                                .findFirstByPortfolioAndSnapshotDateLessThanEqualOrderBySnapshotDateDesc(
+                                        portfolio(), from)
+                                .ifPresent(snapshot -> snapshot.getPositions().size()),
+                        "UNQ_PORTFOLIO_SNAPSHOT_PD"),
+                arguments("PortfolioSnapshotRepository.findByPortfolioAndSnapshotDate",
+                        (Runnable) () -> snapshotRepository.findByPortfolioAndSnapshotDate(portfolio(), from),
+                        "UNQ_PORTFOLIO_SNAPSHOT_PD"),
+                arguments("PortfolioSnapshotRepository.findByPortfolioOrderBySnapshotDate",
+                        (Runnable) () -> snapshotRepository.findByPortfolioOrderBySnapshotDate(portfolio()), null),
+                arguments("PortfolioSnapshotRepository.deleteFromDate",
+                        (Runnable) () -> snapshotRepository.deleteFromDate(portfolio(), from), null)
+        );
+    }
+
+    /** Plain JDBC statements of PortfolioRebuildHelper: replay, first operation date and mark processed. */
+    static Stream<Arguments> jdbcStatements() {
+        return Stream.of(
+                arguments("select type, instrument_id, amount, price, accumulated_coupon_income, percent, when_add " +
+                        "from operation where portfolio_id = ? and deleted = false and when_add > ? and when_add <= ? " +
+                        "order by when_add, id", "IDX_OPERATION_PORTFOLIO_DELETED_WHEN_ADD_ID"),
+                arguments("select min(when_add) from operation where portfolio_id = ? and deleted = false",
+                        "IDX_OPERATION_PORTFOLIO_DELETED_WHEN_ADD_ID"),
+                arguments("update operation set processed = true where portfolio_id = ? and deleted = false " +
+                        "and processed = false", "IDX_OPERATION_PORTFOLIO_DELETED_WHEN_ADD_ID")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("repositoryQueries")
+    void shouldUseIndex(String method, Runnable query, String expectedIndex) {
+        // references (portfolio, instruments) are loaded before recording, changes are rolled back
+        var statements = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            portfolio();
+            Arrays.stream(SYMBOLS).forEach(this::instrument);
+            return RecordingStatementInspector.record(query);
+        });
+        assertFalse(statements.isEmpty(), "No statements are recorded");
+
+        var plans = statements.stream().map(this::explain).collect(Collectors.joining("\n"));
+        assertPlan(plans, expectedIndex);
+    }
+
+    @ParameterizedTest
+    @MethodSource("jdbcStatements")
+    void shouldUseIndex(String sql, String expectedIndex) {
+        assertPlan(explain(sql), expectedIndex);
+    }
+
+    private Portfolio portfolio() {
+        return entityManager.find(Portfolio.class, PORTFOLIO);
+    }
+
+    private Instrument instrument(String symbol) {
+        return entityManager.find(Instrument.class, symbol);
+    }
+
+    /** Get plan of statement, parameters are not known to optimizer, so they are bound to null. */
+    private String explain(String sql) {
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement("explain " + sql);
+            for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+                statement.setObject(i, null);
+            }
+            return statement;
+        }, (rs, rowNum) -> rs.getString(1)).stream().collect(Collectors.joining("\n"));
+    }
+
+    private static void assertPlan(String plan, String expectedIndex) {
+        assertFalse(HISTORY_TABLE_SCAN.matcher(plan).find(), () -> "Full scan of history in plan:\n" + plan);
+        if (expectedIndex != null) {
+            assertTrue(plan.contains("PUBLIC." + expectedIndex), () -> expectedIndex + " is not used:\n" + plan);
+        }
+    }
+}
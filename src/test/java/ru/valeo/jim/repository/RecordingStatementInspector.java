@@ -0,0 +1,35 @@
+package ru.valeo.jim.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** Records SQL prepared by Hibernate while recording is on, registered in test configuration.
+ * Hibernate creates inspector by class name, so recorded statements are static. */
+public class RecordingStatementInspector implements StatementInspector {
+
+    private static final List<String> statements = new CopyOnWriteArrayList<>();
+    private static volatile boolean recording;
+
+    @Override
+    public String inspect(String sql) {
+        if (recording) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    /** Run action and get SQL statements prepared by Hibernate in it. */
+    public static List<String> record(Runnable action) {
+        statements.clear();
+        recording = true;
+        try {
+            action.run();
+        } finally {
+            recording = false;
+        }
+        return new ArrayList<>(statements);
+    }
+}
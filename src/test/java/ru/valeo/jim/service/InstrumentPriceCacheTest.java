@@ -0,0 +1,154 @@
+package ru.valeo.jim.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.domain.InstrumentPrice;
+import ru.valeo.jim.repository.InstrumentPriceRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InstrumentPriceCacheTest {
+
+    private static final Instrument instr1 = new Instrument().setSymbol("1");
+    private static final Instrument instr2 = new Instrument().setSymbol("2");
+
+    @Mock
+    private InstrumentPriceRepository instrumentPriceRepository;
+    private ApplicationConfig applicationConfig;
+    private InstrumentPriceCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        applicationConfig = new ApplicationConfig();
+        cache = new InstrumentPriceCache(instrumentPriceRepository, applicationConfig);
+        when(instrumentPriceRepository.findByInstrument(instr1)).thenReturn(List.of(
+                createPrice(1L, instr1, "10", LocalDateTime.of(2021, 1, 1, 0, 0)),
+                createPrice(2L, instr1, "20", LocalDateTime.of(2021, 2, 1, 0, 0))));
+        when(instrumentPriceRepository.findByInstrument(instr2)).thenReturn(List.of(
+                createPrice(3L, instr2, "30", LocalDateTime.of(2021, 1, 1, 0, 0))));
+    }
+
+    @Test
+    void shouldFindPriceAtOrBeforeDate() {
+        var beforeAll = cache.getPrices(Set.of(instr1), LocalDateTime.of(2020, 1, 1, 0, 0));
+        var onFirst = cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 1, 1, 0, 0));
+        var afterSecond = cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0));
+
+        assertTrue(beforeAll.isEmpty());
+        assertEquals(new BigDecimal("10"), onFirst.get(instr1));
+        assertEquals(new BigDecimal("20"), afterSecond.get(instr1));
+    }
+
+    @Test
+    void shouldLoadHistoryOnlyOnce() {
+        cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 1, 1, 0, 0));
+        cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0));
+
+        verify(instrumentPriceRepository, times(1)).findByInstrument(instr1);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void shouldUpdateLoadedHistoryOnAdd() {
+        cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0));
+
+        cache.add(createPrice(4L, instr1, "25", LocalDateTime.of(2021, 2, 15, 0, 0)));
+        var prices = cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0));
+
+        assertEquals(new BigDecimal("25"), prices.get(instr1));
+        verify(instrumentPriceRepository, times(1)).findByInstrument(instr1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedInstrument() {
+        applicationConfig.setPriceCacheMaxInstruments(1);
+
+        cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0));
+        cache.getPrices(Set.of(instr2), LocalDateTime.of(2021, 3, 1, 0, 0));
+        cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0));
+
+        verify(instrumentPriceRepository, times(2)).findByInstrument(instr1);
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void whenHistoryIsLoading_shouldAnswerOtherInstrumentsAndWaitForOneLoad() throws Exception {
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        blockLoad(instr1, loading, release);
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var first = executor.submit(() -> cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0)));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            var second = executor.submit(() -> cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 1, 1, 0, 0)));
+
+            var other = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> cache.getPrices(Set.of(instr2), LocalDateTime.of(2021, 3, 1, 0, 0)));
+            release.countDown();
+
+            assertEquals(new BigDecimal("30"), other.get(instr2));
+            assertEquals(new BigDecimal("20"), first.get(10, TimeUnit.SECONDS).get(instr1));
+            assertEquals(new BigDecimal("10"), second.get(10, TimeUnit.SECONDS).get(instr1));
+            verify(instrumentPriceRepository, times(1)).findByInstrument(instr1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void whenPriceAddedDuringLoad_shouldNotCacheLoadedHistory() throws Exception {
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        blockLoad(instr1, loading, release);
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var first = executor.submit(() -> cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0)));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            cache.add(createPrice(4L, instr1, "25", LocalDateTime.of(2021, 2, 15, 0, 0)));
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+
+            cache.getPrices(Set.of(instr1), LocalDateTime.of(2021, 3, 1, 0, 0));
+
+            verify(instrumentPriceRepository, times(2)).findByInstrument(instr1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void blockLoad(Instrument instrument, CountDownLatch loading, CountDownLatch release) {
+        var prices = instrumentPriceRepository.findByInstrument(instrument);
+        clearInvocations(instrumentPriceRepository);
+        when(instrumentPriceRepository.findByInstrument(instrument)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return prices;
+        });
+    }
+
+    private static InstrumentPrice createPrice(Long id, Instrument instrument, String price, LocalDateTime whenAdd) {
+        return new InstrumentPrice().setId(id).setInstrument(instrument).setPrice(new BigDecimal(price))
+                .setWhenAdd(whenAdd);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.valeo.jim.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.valeo.jim.cli.DictionariesCommands;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.config.MetricsAspect;
+import ru.valeo.jim.dto.DbStatisticsDto;
+import ru.valeo.jim.exception.OperationNotFoundException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class MetricsReporterTest {
+
+    @Autowired
+    private MetricsReporter metricsReporter;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private PortfolioService portfolioService;
+    @Autowired
+    private OperationsService operationsService;
+    @Autowired
+    private DictionariesCommands dictionariesCommands;
+    @Autowired
+    private ApplicationConfig applicationConfig;
+    @Autowired
+    private DbStatisticsCollector dbStatisticsCollector;
+
+    @Test
+    void shouldTimeServicesAndCommands() {
+        portfolioService.getPortfolio("METRICS");
+        dictionariesCommands.printCurrencies();
+        assertThrows(OperationNotFoundException.class, () -> operationsService.deleteOperation(-1L));
+
+        assertNotNull(meterRegistry.find(MetricsAspect.SERVICE_TIMER)
+                .tags("class", "PortfolioServiceImpl", "method", "getPortfolio", "exception", "none").timer());
+        assertNotNull(meterRegistry.find(MetricsAspect.SERVICE_TIMER)
+                .tags("method", "deleteOperation", "exception", "OperationNotFoundException").timer());
+        assertNotNull(meterRegistry.find(MetricsAspect.COMMAND_TIMER)
+                .tags("command", "currencies").timer());
+    }
+
+    @Test
+    void shouldReportTimersWithPercentilesAndJvmMetrics() {
+        dictionariesCommands.printCurrencies();
+
+        var report = metricsReporter.getReport(null);
+
+        assertTrue(report.contains("jim.command{command=currencies,exception=none} count="));
+        assertTrue(report.contains(" p95="));
+        assertTrue(report.contains("jvm.memory.used"));
+        assertTrue(report.contains("jvm.gc"));
+        assertFalse(report.contains(".histogram"));
+        assertFalse(metricsReporter.getReport("jim.").contains("jvm."));
+    }
+
+    @Test
+    void shouldCollectDbStatisticsPerCommand() {
+        dbStatisticsCollector.getStatistics(true);
+
+        dictionariesCommands.printCurrencies();
+        dictionariesCommands.printCurrencies();
+        var statistics = dbStatisticsCollector.getStatistics(true);
+
+        assertTrue(dbStatisticsCollector.isEnabled());
+        assertEquals(1, statistics.size());
+        assertEquals("currencies", statistics.get(0).getCommand());
+        assertEquals(2, statistics.get(0).getInvocations());
+        assertTrue(statistics.get(0).getStatements() >= 2);
+        assertTrue(statistics.get(0).getEntitiesLoaded() > 0);
+        assertTrue(statistics.get(0).toString().startsWith("currencies: invocations 2, statements "));
+        assertTrue(dbStatisticsCollector.getStatistics(false).stream()
+                .map(DbStatisticsDto::getCommand)
+                .noneMatch("currencies"::equals));
+    }
+
+    @Test
+    void shouldDumpReportToFile(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("metrics.txt");
+        applicationConfig.setMetricsDumpFile(file.toString());
+        try {
+            metricsReporter.dump();
+        } finally {
+            applicationConfig.setMetricsDumpFile(null);
+        }
+
+        assertTrue(Files.readString(file).contains("jvm.memory.used"));
+    }
+}
@@ -11,6 +11,7 @@ import ru.valeo.jim.repository.InstrumentPriceRepository;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -36,9 +37,10 @@ class PortfolioRebalanceHelperTest {
 
         instruments = List.of(instr1, instr2, instr3);
 
-        var price1 = new InstrumentPrice().setInstrument(instr1).setPrice(new BigDecimal(50));
-        var price2 = new InstrumentPrice().setInstrument(instr2).setPrice(new BigDecimal(100));
-        var price3 = new InstrumentPrice().setInstrument(instr3).setPrice(new BigDecimal(30));
+        var whenAdd = LocalDateTime.of(2021, 1, 1, 0, 0);
+        var price1 = new InstrumentPrice().setInstrument(instr1).setPrice(new BigDecimal(50)).setWhenAdd(whenAdd);
+        var price2 = new InstrumentPrice().setInstrument(instr2).setPrice(new BigDecimal(100)).setWhenAdd(whenAdd);
+        var price3 = new InstrumentPrice().setInstrument(instr3).setPrice(new BigDecimal(30)).setWhenAdd(whenAdd);
 
         actualPrices = List.of(price1, price2, price3);
     }
@@ -50,9 +52,13 @@ class PortfolioRebalanceHelperTest {
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
-        helper = new PortfolioRebalanceHelper(instrumentPriceRepository, new ApplicationConfig());
-        when(instrumentPriceRepository.findByWhenAddLessThanEqualOrderByWhenAddDesc(any(LocalDateTime.class)))
-                .thenReturn(actualPrices);
+        var applicationConfig = new ApplicationConfig();
+        helper = new PortfolioRebalanceHelper(new InstrumentPriceCache(instrumentPriceRepository, applicationConfig),
+                applicationConfig);
+        when(instrumentPriceRepository.findByInstrument(any(Instrument.class)))
+                .thenAnswer(invocation -> actualPrices.stream()
+                        .filter(price -> price.getInstrument().equals(invocation.getArgument(0)))
+                        .collect(Collectors.toList()));
     }
 
     @Test
@@ -0,0 +1,113 @@
+package ru.valeo.jim.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortfolioWriteQueueTest {
+
+    @Test
+    void whenShutdown_shouldWriteQueuedTasksAndRejectNew() throws Exception {
+        var queue = new PortfolioWriteQueue<Integer>(1, 2, (portfolioName, tasks) -> {
+            sleep(5);
+            tasks.forEach(task -> task.getFuture().complete(task.getPayload()));
+        });
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (var i = 0; i < 20; i++) {
+            futures.add(queue.submit(i % 2 == 0 ? "A" : "B", i));
+        }
+
+        assertTrue(queue.shutdown(Duration.ofSeconds(10)));
+
+        for (var i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).getNow(-1));
+        }
+        var rejected = queue.submit("A", 100);
+        var exception = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    void whenShutdownBetweenBatches_shouldWriteLeftBatches() throws Exception {
+        var writing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var queue = new PortfolioWriteQueue<Integer>(1, 1, (portfolioName, tasks) -> {
+            if (portfolioName.equals("A")) {
+                writing.countDown();
+                await(release);
+            }
+            tasks.forEach(task -> task.getFuture().complete(task.getPayload()));
+        });
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (var i = 0; i < 3; i++) {
+            futures.add(queue.submit("A", i));
+        }
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        var shutdown = CompletableFuture.supplyAsync(() -> queue.shutdown(Duration.ofSeconds(10)));
+        // tasks are rejected after executor is shut down
+        for (var i = 0; !queue.submit("B" + i, i).isCompletedExceptionally(); i++) {
+            sleep(1);
+        }
+        release.countDown();
+
+        assertTrue(shutdown.get(20, TimeUnit.SECONDS));
+        for (var i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).getNow(-1));
+        }
+    }
+
+    @Test
+    void whenShutdownTimedOut_shouldCompleteLeftTasksExceptionally() throws Exception {
+        var blocked = new CountDownLatch(1);
+        var queue = new PortfolioWriteQueue<Integer>(1, 1, (portfolioName, tasks) -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            tasks.forEach(task -> task.getFuture().complete(task.getPayload()));
+        });
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (var i = 0; i < 5; i++) {
+            futures.add(queue.submit("A", i));
+        }
+
+        assertFalse(queue.shutdown(Duration.ofMillis(100)));
+
+        for (var future : futures) {
+            var exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof RejectedExecutionException
+                    || exception.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.valeo.jim.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.Currency;
+import ru.valeo.jim.domain.Instrument;
+import ru.valeo.jim.repository.CurrencyRepository;
+import ru.valeo.jim.repository.InstrumentCategoryRepository;
+import ru.valeo.jim.repository.InstrumentRepository;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReferenceDataCacheTest {
+
+    private static final Currency usd = new Currency().setCode("USD");
+    private static final Instrument instr = new Instrument().setSymbol("1").setBaseCurrency(usd);
+
+    @Mock
+    private CurrencyRepository currencyRepository;
+    @Mock
+    private InstrumentCategoryRepository instrumentCategoryRepository;
+    @Mock
+    private InstrumentRepository instrumentRepository;
+    private ApplicationConfig applicationConfig;
+    private ReferenceDataCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        applicationConfig = new ApplicationConfig();
+        cache = new ReferenceDataCache(currencyRepository, instrumentCategoryRepository, instrumentRepository,
+                applicationConfig);
+        when(currencyRepository.findById("USD")).thenReturn(Optional.of(usd));
+        when(instrumentRepository.findById("1")).thenReturn(Optional.of(instr));
+        when(instrumentRepository.findById("2")).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void shouldLoadOnlyOnce() {
+        cache.findInstrument("1");
+        var instrument = cache.findInstrument("1");
+
+        assertEquals(Optional.of(instr), instrument);
+        verify(instrumentRepository, times(1)).findById("1");
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void shouldNotCacheAbsentValue() {
+        assertFalse(cache.findInstrument("2").isPresent());
+        when(instrumentRepository.findById("2")).thenReturn(Optional.of(new Instrument().setSymbol("2")));
+
+        assertTrue(cache.findInstrument("2").isPresent());
+    }
+
+    @Test
+    void shouldEvictInstrumentsWithCurrency() {
+        cache.findCurrency("USD");
+        cache.findInstrument("1");
+
+        cache.evictCurrency("USD");
+        cache.findCurrency("USD");
+        cache.findInstrument("1");
+
+        verify(currencyRepository, times(2)).findById("USD");
+        verify(instrumentRepository, times(2)).findById("1");
+    }
+
+    @Test
+    void shouldLoadEveryTimeIfDisabled() {
+        applicationConfig.setReferenceDataCacheEnabled(false);
+
+        cache.findInstrument("1");
+        cache.findInstrument("1");
+
+        verify(instrumentRepository, times(2)).findById("1");
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    void shouldShowHitRatio() {
+        cache.findInstrument("1");
+        cache.findInstrument("1");
+        cache.findInstrument("1");
+        cache.findInstrument("1");
+
+        assertTrue(cache.getStats().contains("instruments=1, hits=3, misses=1, hitRatio=75%"));
+    }
+}
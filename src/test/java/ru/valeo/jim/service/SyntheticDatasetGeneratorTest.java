@@ -0,0 +1,63 @@
+package ru.valeo.jim.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.valeo.jim.dto.PortfolioDto;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class SyntheticDatasetGeneratorTest {
+
+    @Autowired
+    private SyntheticDatasetGenerator generator;
+    @Autowired
+    private PortfolioService portfolioService;
+    @Autowired
+    private OperationsService operationsService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldGeneratePortfoliosConsistentWithOperationsLog() {
+        var result = generator.generate("SYN", 2, 20, 500, 30, 1);
+
+        assertEquals(2, result.getPortfolios());
+        assertEquals(20, result.getInstruments());
+        assertEquals(1000, result.getOperations());
+        assertEquals(600, result.getPrices());
+        assertEquals(6, jdbcTemplate.queryForObject(
+                "select count(*) from instrument where symbol like 'SYN%' and bond_par_value is not null", Long.class));
+        for (var name : new String[]{"SYN-P0", "SYN-P1"}) {
+            var portfolio = portfolioService.getPortfolio(name).orElseThrow();
+            var positions = portfolioService.getInstrumentPositions(name);
+
+            assertTrue(portfolio.getAvailableMoney().signum() >= 0);
+            assertFalse(positions.isEmpty());
+            assertTrue(positions.stream().allMatch(position -> position.getAmount() >= 0
+                    && position.getAccountingPrice().signum() >= 0));
+            assertTrue(operationsService.checkAccountingPrices(name).isEmpty());
+
+            // replay of generated log gives the same state
+            portfolioService.rebuild(name);
+
+            assertEquals(0, portfolio.getAvailableMoney().compareTo(
+                    portfolioService.getPortfolio(name).map(PortfolioDto::getAvailableMoney).orElse(BigDecimal.ZERO)));
+            assertEquals(positions, portfolioService.getInstrumentPositions(name));
+        }
+    }
+
+    @Test
+    void shouldNotGenerateTwiceWithSamePrefix() {
+        generator.generate("SYNX", 1, 1, 10, 1, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> generator.generate("SYNX", 1, 1, 10, 1, 1));
+    }
+}
@@ -3,13 +3,19 @@ package ru.valeo.jim.service.impl;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.dto.BondDto;
+import ru.valeo.jim.dto.ImportResultDto;
 import ru.valeo.jim.dto.InstrumentDto;
 import ru.valeo.jim.dto.InstrumentPriceDto;
 import ru.valeo.jim.exception.InstrumentNotFoundException;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -20,6 +26,8 @@ class InstrumentsPriceServiceImplTest {
     private InstrumentsPriceServiceImpl service;
     @Autowired
     private InstrumentsServiceImpl instrumentsService;
+    @Autowired
+    private ApplicationConfig applicationConfig;
 
     @Test
     void shouldAddPriceIfInstrumentExists() {
@@ -41,6 +49,76 @@ class InstrumentsPriceServiceImplTest {
         assertThrows(InstrumentNotFoundException.class, () -> service.get("NOT_EXISTS"));
     }
 
+    @Test
+    void shouldImportPricesFromCsv() {
+        var instrumentDto = createTestInstrumentDto();
+        instrumentDto.setSymbol("XXXIMP");
+        instrumentsService.save(instrumentDto);
+        var bondDto = new BondDto();
+        bondDto.setSymbol("BNDIMP");
+        bondDto.setName("X bond LLC");
+        bondDto.setBaseCurrencyCode("USD");
+        bondDto.setCategoryCode("GOVB");
+        bondDto.setParValue(new BigDecimal("1000"));
+        instrumentsService.save(bondDto);
+        var csv = "symbol,price,accumulatedCouponIncome,whenAdd\n" +
+                "XXXIMP,10.5,,2021-01-01 10:00:00\n" +
+                "BNDIMP,101.5%,3.2,2021-01-01\n" +
+                "NOT_EXISTS,1,,2021-01-01\n" +
+                "XXXIMP,11%,,2021-01-02\n" +
+                "\n" +
+                "XXXIMP,11,,2021-01-02\n";
+
+        var result = service.importPrices(new StringReader(csv));
+        var sharePrices = service.get(instrumentDto.getSymbol());
+        var bondPrices = service.get(bondDto.getSymbol());
+
+        assertEquals(3, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(2, sharePrices.size());
+        assertEquals(0, new BigDecimal("10.5").compareTo(sharePrices.get(0).getPrice()));
+        assertEquals(0, new BigDecimal("11").compareTo(sharePrices.get(1).getPrice()));
+        assertEquals(1, bondPrices.size());
+        assertEquals(0, new BigDecimal("1015").compareTo(bondPrices.get(0).getPrice()));
+        assertEquals(0, new BigDecimal("3.2").compareTo(bondPrices.get(0).getAccumulatedCouponIncome()));
+    }
+
+    @Test
+    void whenImportBatchFailsInDatabase_shouldReportItAndImportOtherBatches() {
+        var instrumentDto = createTestInstrumentDto();
+        instrumentDto.setSymbol("XXXCHK");
+        instrumentsService.save(instrumentDto);
+        var deletedDto = createTestInstrumentDto();
+        deletedDto.setSymbol("XXXDEL");
+        instrumentsService.save(deletedDto);
+        var csv = "XXXCHK,1,,2021-01-01\n" +
+                "XXXCHK,2,,2021-01-02\n" +
+                "XXXCHK,3,,2021-01-03\n" +
+                "XXXDEL,4,,2021-01-04\n" +
+                "XXXCHK,5,,2021-01-05\n";
+        // instrument is deleted after instruments are loaded for import, its prices fail on foreign key
+        var source = new StringReader(csv) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                instrumentsService.delete(deletedDto.getSymbol());
+                return super.read(buffer, offset, length);
+            }
+        };
+        var batchSize = applicationConfig.getImportBatchSize();
+        applicationConfig.setImportBatchSize(2);
+        ImportResultDto result;
+        try {
+            result = service.importPrices(source);
+        } finally {
+            applicationConfig.setImportBatchSize(batchSize);
+        }
+
+        assertEquals(3, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertTrue(result.getErrors().get(0).startsWith("lines 3-4: 2 rows are not imported, imported before: 2, "),
+                result.getErrors().get(0));
+        assertEquals(3, service.get(instrumentDto.getSymbol()).size());
+    }
 
     private InstrumentDto createTestInstrumentDto() {
         var dto = new InstrumentDto();
@@ -1,15 +1,32 @@
 package ru.valeo.jim.service.impl;
 
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.valeo.jim.StatementsCounter;
 import ru.valeo.jim.config.ApplicationConfig;
 import ru.valeo.jim.domain.InstrumentType;
 import ru.valeo.jim.dto.BondDto;
+import ru.valeo.jim.dto.ImportResultDto;
 import ru.valeo.jim.dto.InstrumentDto;
 import ru.valeo.jim.dto.PortfolioDto;
 import ru.valeo.jim.dto.operation.AddMoneyDto;
@@ -19,6 +36,7 @@ import ru.valeo.jim.dto.operation.BuyInstrumentDto;
 import ru.valeo.jim.dto.operation.CouponDto;
 import ru.valeo.jim.dto.operation.DividendDto;
 import ru.valeo.jim.dto.operation.InstrumentConversionDto;
+import ru.valeo.jim.dto.operation.OperationDto;
 import ru.valeo.jim.dto.operation.SellInstrumentDto;
 import ru.valeo.jim.dto.operation.TaxDto;
 import ru.valeo.jim.dto.operation.WithdrawMoneyDto;
@@ -37,6 +55,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
+@ExtendWith(StatementsCounter.Extension.class)
 class OperationsServiceImplTest {
 
     @Autowired
@@ -47,6 +66,8 @@ class OperationsServiceImplTest {
     private InstrumentsService instrumentsService;
     @Autowired
     private ApplicationConfig applicationConfig;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @Test
     void whenPortfolioExists_shouldAddMoney() {
@@ -149,6 +170,41 @@ class OperationsServiceImplTest {
                 .anyMatch(instrumentPositionDto -> instrumentPositionDto.getAccountingPrice().equals(operationDto.getPrice())));
     }
 
+    @Test
+    void whenPortfolioHasManyPositions_shouldBuyInstrumentWithBoundedStatements(StatementsCounter statementsCounter) {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .value(new BigDecimal("1000"))
+                .build());
+        for (int i = 0; i < 5; i++) {
+            var instrumentDto = createInstrumentDto();
+            instrumentDto.setSymbol("BSSSHR" + i);
+            instrumentsService.save(instrumentDto);
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(portfolioDto.getName())
+                    .symbol(instrumentDto.getSymbol())
+                    .amount(1)
+                    .price(BigDecimal.TEN)
+                    .build());
+        }
+
+        // statements don't depend on count of positions: they are loaded by one select
+        var operationDto = statementsCounter.assertAtMost(7, () -> operationsService.buyInstrument(BuyInstrumentDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol("BSSSHR0")
+                .amount(1)
+                .price(BigDecimal.TEN)
+                .build()));
+        var positions = portfolioService.getInstrumentPositions(portfolioDto.getName());
+
+        assertNotNull(operationDto.getWhenAdd());
+        assertEquals(5, positions.size());
+        assertTrue(positions.stream()
+                .anyMatch(position -> position.getSymbol().equals("BSSSHR0") && position.getAmount() == 2));
+    }
+
     @Test
     void whenBuyAndSellOperationsPerformed_shouldHaveCorrectAccountingPrice() {
         // create test portfolio with sufficient money
@@ -247,6 +303,317 @@ class OperationsServiceImplTest {
                         .equals(BigDecimal.ZERO)), "should have accounting price equals to ZERO");
     }
 
+    @Test
+    void whenBuyAndSellOperationsPerformed_shouldHaveConsistentPositionTotals() {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .value(new BigDecimal("1000"))
+                .build());
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+
+        for (var price : new String[]{"15", "20", "17.5"}) {
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(portfolioDto.getName())
+                    .symbol(instrumentDto.getSymbol())
+                    .amount(3)
+                    .price(new BigDecimal(price))
+                    .build());
+        }
+        operationsService.sellInstrument(SellInstrumentDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .amount(4)
+                .price(new BigDecimal("25"))
+                .build());
+        var positions = portfolioService.getInstrumentPositions(portfolioDto.getName());
+
+        assertTrue(operationsService.checkAccountingPrices(portfolioDto.getName()).isEmpty());
+        assertEquals(1, positions.size());
+        assertEquals(new BigDecimal("11.500"), positions.get(0).getAccountingPrice());
+    }
+
+    @Test
+    void whenOperationDeletedAndRestored_shouldRevertAndApplyItIncrementally() {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .value(new BigDecimal("1000"))
+                .build());
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+        for (var price : new String[]{"10", "20"}) {
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(portfolioDto.getName())
+                    .symbol(instrumentDto.getSymbol())
+                    .amount(2)
+                    .price(new BigDecimal(price))
+                    .build());
+        }
+        operationsService.sellInstrument(SellInstrumentDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .amount(1)
+                .price(new BigDecimal("15"))
+                .build());
+        var buyIds = portfolioService.getProcessedOperations(portfolioDto.getName()).stream()
+                .filter(dto -> dto instanceof BuyInstrumentDto)
+                .sorted(Comparator.comparing(OperationDto::getId))
+                .map(OperationDto::getId)
+                .collect(Collectors.toList());
+
+        operationsService.deleteOperation(buyIds.get(1));
+
+        assertEquals(0, new BigDecimal("995").compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                .orElseThrow().getAvailableMoney()));
+        var position = portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0);
+        assertEquals(1, position.getAmount());
+        assertEquals(new BigDecimal("5.000"), position.getAccountingPrice());
+        assertTrue(operationsService.checkAccountingPrices(portfolioDto.getName()).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> operationsService.deleteOperation(buyIds.get(1)));
+        assertThrows(InsufficientAmountException.class, () -> operationsService.deleteOperation(buyIds.get(0)));
+
+        operationsService.restoreOperation(buyIds.get(1));
+
+        assertEquals(0, new BigDecimal("955").compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                .orElseThrow().getAvailableMoney()));
+        position = portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0);
+        assertEquals(3, position.getAmount());
+        assertEquals(new BigDecimal("15.000"), position.getAccountingPrice());
+        assertTrue(operationsService.checkAccountingPrices(portfolioDto.getName()).isEmpty());
+    }
+
+    @Test
+    void whenConcurrentOperationsOnPortfolio_shouldNotLoseUpdatesOrOverdraw() throws Exception {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        var otherPortfolioDto = createTestPortfolioDto();
+        portfolioService.save(otherPortfolioDto);
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Object>> addMoneyTasks = new ArrayList<>();
+            for (var i = 0; i < 40; i++) {
+                for (var name : new String[]{portfolioDto.getName(), otherPortfolioDto.getName()}) {
+                    addMoneyTasks.add(() -> operationsService.addMoney(AddMoneyDto.builder()
+                            .portfolioName(name)
+                            .value(new BigDecimal("5"))
+                            .build()));
+                }
+            }
+            for (var future : executor.invokeAll(addMoneyTasks)) {
+                future.get();
+            }
+            List<Callable<Object>> buyTasks = new ArrayList<>();
+            for (var i = 0; i < 30; i++) {
+                buyTasks.add(() -> operationsService.buyInstrument(BuyInstrumentDto.builder()
+                        .portfolioName(portfolioDto.getName())
+                        .symbol(instrumentDto.getSymbol())
+                        .amount(1)
+                        .price(BigDecimal.TEN)
+                        .build()));
+            }
+            var insufficientMoney = 0;
+            for (var future : executor.invokeAll(buyTasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof InsufficientMoneyException);
+                    insufficientMoney++;
+                }
+            }
+
+            assertEquals(10, insufficientMoney);
+            assertEquals(0, BigDecimal.ZERO.compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                    .orElseThrow().getAvailableMoney()));
+            assertEquals(0, new BigDecimal("200").compareTo(portfolioService.getPortfolio(otherPortfolioDto.getName())
+                    .orElseThrow().getAvailableMoney()));
+            assertEquals(20, portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0).getAmount());
+            assertTrue(operationsService.checkAccountingPrices(portfolioDto.getName()).isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void whenPortfolioRebuiltWhileOperationsAdded_shouldNotLoseOperations() throws Exception {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .value(new BigDecimal("100"))
+                .build());
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (var i = 0; i < 60; i++) {
+                tasks.add(() -> operationsService.addMoney(AddMoneyDto.builder()
+                        .portfolioName(portfolioDto.getName())
+                        .value(BigDecimal.ONE)
+                        .build()));
+                if (i % 2 == 0) {
+                    tasks.add(() -> operationsService.buyInstrument(BuyInstrumentDto.builder()
+                            .portfolioName(portfolioDto.getName())
+                            .symbol(instrumentDto.getSymbol())
+                            .amount(1)
+                            .price(BigDecimal.ONE)
+                            .build()));
+                }
+                if (i % 3 == 0) {
+                    tasks.add(() -> portfolioService.rebuild(portfolioDto.getName()));
+                }
+            }
+            for (var future : executor.invokeAll(tasks)) {
+                var result = future.get();
+                if (result instanceof List) {
+                    assertFalse(result.toString().contains("not rebuilt"), result.toString());
+                }
+            }
+
+            // 100 + 60 - 30
+            assertEquals(0, new BigDecimal("130").compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                    .orElseThrow().getAvailableMoney()));
+            assertEquals(30, portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0).getAmount());
+            assertEquals(91, portfolioService.getProcessedOperations(portfolioDto.getName()).size());
+            assertTrue(operationsService.checkAccountingPrices(portfolioDto.getName()).isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void whenOperationAddedInCallerTransaction_shouldHoldLockUntilItCompletes() throws Exception {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var concurrent = new TransactionTemplate(transactionManager).execute(status -> {
+                operationsService.addMoney(AddMoneyDto.builder()
+                        .portfolioName(portfolioDto.getName())
+                        .value(BigDecimal.TEN)
+                        .build());
+                var future = executor.submit(() -> operationsService.addMoney(AddMoneyDto.builder()
+                        .portfolioName(portfolioDto.getName())
+                        .value(BigDecimal.ONE)
+                        .build()));
+                assertThrows(TimeoutException.class, () -> future.get(200, TimeUnit.MILLISECONDS));
+                status.setRollbackOnly();
+                return future;
+            });
+            concurrent.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, BigDecimal.ONE.compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                .orElseThrow().getAvailableMoney()));
+    }
+
+    @Test
+    void whenOperationsSubmittedToQueue_shouldApplyThemAndReportValidationErrors() throws Exception {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        List<CompletableFuture<AddMoneyDto>> addMoneyFutures = new ArrayList<>();
+        for (var i = 0; i < 200; i++) {
+            addMoneyFutures.add(operationsService.submit(AddMoneyDto.builder()
+                    .portfolioName(portfolioDto.getName())
+                    .value(BigDecimal.ONE)
+                    .build()));
+        }
+        var withdrawFuture = operationsService.submit(WithdrawMoneyDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .value(new BigDecimal("1000"))
+                .build());
+
+        for (var future : addMoneyFutures) {
+            assertEquals(0, BigDecimal.ONE.compareTo(future.get(30, TimeUnit.SECONDS).getValue()));
+        }
+        var exception = assertThrows(ExecutionException.class, () -> withdrawFuture.get(30, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof InsufficientMoneyException);
+        assertEquals(0, new BigDecimal("200").compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                .orElseThrow().getAvailableMoney()));
+        assertEquals(200, portfolioService.getProcessedOperations(portfolioDto.getName()).size());
+    }
+
+    @Test
+    void whenImportOperations_shouldApplyValidRowsAndReportInvalid() {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+        var bondDto = createBondDto();
+        instrumentsService.save(bondDto);
+        var report = "type,symbol,amount,price,accumulatedCouponIncome,percent,whenAdd\n" +
+                "ADD_MONEY,,,1000,,,2021-01-01 10:00:00\n" +
+                "BUY,XXX,3,15,,,2021-01-02 10:00:00\n" +
+                "{\"type\":\"BUY\",\"symbol\":\"BND1\",\"amount\":2,\"percent\":101.5,\"accumulatedCouponIncome\":1.5}\n" +
+                "BUY,XXX,5,20,,,2021-01-03\n" +
+                "SELL,XXX,10,25,,,2021-01-04\n" +
+                "SELL,XXX,3,25,,,2021-01-04\n" +
+                "DIVIDEND,XXX,5,2,,,2021-01-05\n" +
+                "TAX,,,5.5,,,2021-01-05\n" +
+                "UNKNOWN,XXX,1,1,,,\n" +
+                "COUPON,BND1,2,0.5,,,\n";
+
+        var result = operationsService.importOperations(portfolioDto.getName(), new StringReader(report));
+        var reloadedPortfolioDto = portfolioService.getPortfolio(portfolioDto.getName());
+        var positions = portfolioService.getInstrumentPositions(portfolioDto.getName());
+
+        assertEquals(8, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertTrue(reloadedPortfolioDto.isPresent());
+        // 1000 - 45 - (20.3 + 1.5) - 100 + 75 + 10 - 5.5 + 1
+        assertEquals(0, new BigDecimal("913.7").compareTo(reloadedPortfolioDto.get().getAvailableMoney()));
+        assertEquals(2, positions.size());
+        assertTrue(positions.stream().anyMatch(position -> position.getSymbol().equals(instrumentDto.getSymbol())
+                && position.getAmount() == 5
+                && position.getAccountingPrice().equals(new BigDecimal("14.000"))));
+        assertTrue(positions.stream().anyMatch(position -> position.getSymbol().equals(bondDto.getSymbol())
+                && position.getAmount() == 2));
+        assertEquals(8, portfolioService.getProcessedOperations(portfolioDto.getName()).size());
+        assertTrue(operationsService.checkAccountingPrices(portfolioDto.getName()).isEmpty());
+    }
+
+    @Test
+    void whenImportChunkFailsOnFlush_shouldReportItAndImportOtherChunks() {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+        // sell above buy price makes accounting price of the rest negative, it's rejected on flush
+        var report = "type,symbol,amount,price,accumulatedCouponIncome,percent,whenAdd\n" +
+                "ADD_MONEY,,,1000,,,2021-01-01 10:00:00\n" +
+                "BUY,XXX,2,10,,,2021-01-02 10:00:00\n" +
+                "SELL,XXX,1,30,,,2021-01-03 10:00:00\n" +
+                "ADD_MONEY,,,5,,,2021-01-04 10:00:00\n" +
+                "ADD_MONEY,,,7,,,2021-01-05 10:00:00\n";
+
+        var batchSize = applicationConfig.getImportBatchSize();
+        applicationConfig.setImportBatchSize(2);
+        ImportResultDto result;
+        try {
+            result = operationsService.importOperations(portfolioDto.getName(), new StringReader(report));
+        } finally {
+            applicationConfig.setImportBatchSize(batchSize);
+        }
+
+        assertEquals(3, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).startsWith("lines 4-5: 2 rows are not imported, imported before: 2, "));
+        assertTrue(result.getErrors().get(0).contains("InstrumentPosition.accountingPrice"));
+        assertEquals(0, new BigDecimal("987").compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                .orElseThrow().getAvailableMoney()));
+        assertEquals(2, portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0).getAmount());
+        assertEquals(3, portfolioService.getProcessedOperations(portfolioDto.getName()).size());
+    }
+
     @Test
     void whenHasShareInPortfolio_shouldPerformDividendOperation() {
         // create test portfolio with sufficient money
@@ -313,6 +680,113 @@ class OperationsServiceImplTest {
         assertEquals(new BigDecimal("1.500"), instrumentPositions.get(0).getAccountingPrice());
     }
 
+    @Test
+    void whenConversionDeletedOrRestored_shouldRebuildPortfolioOrKeepItIfReplayFails() {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .value(new BigDecimal("1000"))
+                .build());
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+        operationsService.buyInstrument(BuyInstrumentDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .amount(3)
+                .price(new BigDecimal("15"))
+                .build());
+        operationsService.instrumentConversion(InstrumentConversionDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .newAmount(30)
+                .build());
+        var conversionId = portfolioService.getProcessedOperations(portfolioDto.getName()).stream()
+                .filter(dto -> dto instanceof InstrumentConversionDto)
+                .map(OperationDto::getId)
+                .findFirst().orElseThrow();
+
+        assertTrue(operationsService.deleteOperation(conversionId).contains("portfolio is rebuilt"));
+        assertEquals(3, portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0).getAmount());
+        operationsService.restoreOperation(conversionId);
+        assertEquals(30, portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0).getAmount());
+
+        // can't be replayed without conversion: only 3 instruments are bought
+        operationsService.sellInstrument(SellInstrumentDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .amount(20)
+                .price(new BigDecimal("1"))
+                .build());
+
+        assertThrows(RuntimeException.class, () -> operationsService.deleteOperation(conversionId));
+
+        assertEquals(4, portfolioService.getProcessedOperations(portfolioDto.getName()).size());
+        assertEquals(0, new BigDecimal("975").compareTo(portfolioService.getPortfolio(portfolioDto.getName())
+                .orElseThrow().getAvailableMoney()));
+        var position = portfolioService.getInstrumentPositions(portfolioDto.getName()).get(0);
+        assertEquals(10, position.getAmount());
+        assertThrows(IllegalArgumentException.class, () -> operationsService.restoreOperation(conversionId));
+    }
+
+    @Test
+    void whenOperationBeforeConversionDeletedOrRestored_shouldHavePositionAsAfterRebuild() {
+        var portfolioDto = createTestPortfolioDto();
+        portfolioService.save(portfolioDto);
+        var start = LocalDateTime.of(2021, 1, 1, 10, 0);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .value(new BigDecimal("1000"))
+                .whenAdd(start)
+                .build());
+        var instrumentDto = createInstrumentDto();
+        instrumentsService.save(instrumentDto);
+        operationsService.buyInstrument(BuyInstrumentDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .amount(3)
+                .price(new BigDecimal("15"))
+                .whenAdd(start.plusDays(1))
+                .build());
+        operationsService.buyInstrument(BuyInstrumentDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .amount(2)
+                .price(new BigDecimal("20"))
+                .whenAdd(start.plusDays(2))
+                .build());
+        operationsService.instrumentConversion(InstrumentConversionDto.builder()
+                .portfolioName(portfolioDto.getName())
+                .symbol(instrumentDto.getSymbol())
+                .newAmount(50)
+                .whenAdd(start.plusDays(3))
+                .build());
+        var buyId = portfolioService.getProcessedOperations(portfolioDto.getName()).stream()
+                .filter(dto -> dto instanceof BuyInstrumentDto && ((BuyInstrumentDto) dto).getAmount() == 2)
+                .map(OperationDto::getId)
+                .findFirst().orElseThrow();
+
+        assertTrue(operationsService.deleteOperation(buyId).contains("portfolio is rebuilt"));
+        assertPositionAsAfterRebuild(portfolioDto.getName(), 50, "955");
+
+        assertTrue(operationsService.restoreOperation(buyId).contains("portfolio is rebuilt"));
+        assertPositionAsAfterRebuild(portfolioDto.getName(), 50, "915");
+    }
+
+    private void assertPositionAsAfterRebuild(String portfolioName, int amount, String money) {
+        var position = portfolioService.getInstrumentPositions(portfolioName).get(0);
+        var availableMoney = portfolioService.getPortfolio(portfolioName).orElseThrow().getAvailableMoney();
+        portfolioService.rebuild(portfolioName);
+        var rebuilt = portfolioService.getInstrumentPositions(portfolioName).get(0);
+
+        assertEquals(amount, position.getAmount());
+        assertEquals(rebuilt.getAmount(), position.getAmount());
+        assertEquals(0, rebuilt.getAccountingPrice().compareTo(position.getAccountingPrice()));
+        assertEquals(0, new BigDecimal(money).compareTo(availableMoney));
+        assertEquals(0, availableMoney.compareTo(
+                portfolioService.getPortfolio(portfolioName).orElseThrow().getAvailableMoney()));
+    }
+
     @Test
     void whenHasBondInPortfolio_shouldPerformCouponOperation() {
         // create test portfolio with sufficient money
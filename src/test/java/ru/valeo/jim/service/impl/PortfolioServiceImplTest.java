@@ -1,25 +1,52 @@
 package ru.valeo.jim.service.impl;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.valeo.jim.StatementsCounter;
 import ru.valeo.jim.config.ApplicationConfig;
+import ru.valeo.jim.domain.OperationType;
+import ru.valeo.jim.dto.InstrumentDto;
+import ru.valeo.jim.dto.InstrumentPriceDto;
+import ru.valeo.jim.dto.OperationsFilterDto;
+import ru.valeo.jim.dto.OperationsPageDto;
 import ru.valeo.jim.dto.PortfolioDto;
+import ru.valeo.jim.dto.PortfolioInstrumentsDistributionDto;
+import ru.valeo.jim.dto.operation.AddMoneyDto;
+import ru.valeo.jim.dto.operation.BuyInstrumentDto;
+import ru.valeo.jim.dto.operation.DividendDto;
+import ru.valeo.jim.dto.operation.OperationDto;
 import ru.valeo.jim.exception.PortfolioNotFoundException;
 import ru.valeo.jim.exception.UnexpectedValueException;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
+@ExtendWith(StatementsCounter.Extension.class)
 class PortfolioServiceImplTest {
 
     @Autowired
     private PortfolioServiceImpl service;
     @Autowired
     private ApplicationConfig applicationConfig;
+    @Autowired
+    private OperationsServiceImpl operationsService;
+    @Autowired
+    private InstrumentsServiceImpl instrumentsService;
+    @Autowired
+    private InstrumentsPriceServiceImpl instrumentsPriceService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     @Test
     void shouldGetListOfPortfolios() {
@@ -89,6 +116,325 @@ class PortfolioServiceImplTest {
         assertThrows(PortfolioNotFoundException.class, () -> service.setDefault("UNKNOWN"));
     }
 
+    @Test
+    void shouldUseLatestPricesAtDateForDistributionByActualPrice() {
+        var saved = service.save(createTestDto());
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("100"))
+                .build());
+        var share = createInstrumentDto("ACTSHR", "SHR");
+        var etf = createInstrumentDto("ACTETF", "ETFSHR");
+        for (var instrumentDto : new InstrumentDto[]{share, etf}) {
+            instrumentsService.save(instrumentDto);
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(saved.getName())
+                    .symbol(instrumentDto.getSymbol())
+                    .amount(1)
+                    .price(BigDecimal.TEN)
+                    .build());
+        }
+        addPrice(share.getSymbol(), new BigDecimal("30"), LocalDateTime.of(2021, 1, 1, 10, 0));
+        addPrice(share.getSymbol(), new BigDecimal("10"), LocalDateTime.of(2021, 6, 1, 10, 0));
+        addPrice(etf.getSymbol(), new BigDecimal("10"), LocalDateTime.of(2021, 1, 1, 10, 0));
+
+        var beforeSecondPrice = service.getInstrumentsDistributionByActualPrice(saved.getName(),
+                LocalDateTime.of(2021, 3, 1, 0, 0));
+        var afterSecondPrice = service.getInstrumentsDistributionByActualPrice(saved.getName(),
+                LocalDateTime.of(2021, 7, 1, 0, 0));
+
+        assertEquals(0, new BigDecimal("75").compareTo(getPercent(beforeSecondPrice, "SHR")));
+        assertEquals(0, new BigDecimal("25").compareTo(getPercent(beforeSecondPrice, "ETFSHR")));
+        assertEquals(0, new BigDecimal("50").compareTo(getPercent(afterSecondPrice, "SHR")));
+        assertEquals(0, new BigDecimal("50").compareTo(getPercent(afterSecondPrice, "ETFSHR")));
+    }
+
+    @Test
+    void shouldRebuildPositionsAndAvailableMoneyFromOperations() {
+        var saved = service.save(createTestDto());
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("100"))
+                .build());
+        var share = createInstrumentDto("RBDSHR", "SHR");
+        instrumentsService.save(share);
+        operationsService.buyInstrument(BuyInstrumentDto.builder()
+                .portfolioName(saved.getName())
+                .symbol(share.getSymbol())
+                .amount(3)
+                .price(BigDecimal.TEN)
+                .build());
+        jdbcTemplate.update("update instrument_position set amount = 0, accounting_price = 0 where portfolio_id = ?",
+                saved.getName());
+        jdbcTemplate.update("update portfolio set available_money = 0 where name = ?", saved.getName());
+
+        var result = service.rebuild(saved.getName());
+
+        assertEquals(1, result.size());
+        assertEquals(0, new BigDecimal("70").compareTo(service.getPortfolio(saved.getName())
+                .orElseThrow().getAvailableMoney()));
+        var position = service.getInstrumentPositions(saved.getName()).get(0);
+        assertEquals(3, position.getAmount());
+        assertEquals(0, BigDecimal.TEN.compareTo(position.getAccountingPrice()));
+    }
+
+    @Test
+    void shouldGetPositionsAndMoneyAtDateFromSnapshots() {
+        var saved = service.save(createTestDto());
+        var share = createInstrumentDto("SNPSHR", "SHR");
+        instrumentsService.save(share);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("100"))
+                .whenAdd(LocalDateTime.of(2021, 1, 5, 10, 0))
+                .build());
+        for (var date : new LocalDateTime[]{LocalDateTime.of(2021, 1, 10, 10, 0), LocalDateTime.of(2021, 3, 10, 10, 0)}) {
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(saved.getName())
+                    .symbol(share.getSymbol())
+                    .amount(2)
+                    .price(BigDecimal.TEN)
+                    .whenAdd(date)
+                    .build());
+        }
+
+        assertFalse(service.createMonthlySnapshots(saved.getName()).isEmpty());
+        assertTrue(service.createMonthlySnapshots(saved.getName()).isEmpty());
+
+        var february = LocalDateTime.of(2021, 2, 15, 0, 0);
+        assertEquals(2, service.getInstrumentPositionsAt(saved.getName(), february).get(0).getAmount());
+        assertEquals(4, service.getInstrumentPositionsAt(saved.getName(), LocalDateTime.of(2021, 4, 1, 0, 0))
+                .get(0).getAmount());
+        assertEquals(0, new BigDecimal("80").compareTo(service.getPortfolioAt(saved.getName(), february)
+                .orElseThrow().getAvailableMoney()));
+
+        // operation added before snapshots makes them stale
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("50"))
+                .whenAdd(LocalDateTime.of(2021, 2, 1, 10, 0))
+                .build());
+        assertEquals(0, new BigDecimal("110").compareTo(service.getPortfolioAt(saved.getName(),
+                LocalDateTime.of(2021, 4, 1, 0, 0)).orElseThrow().getAvailableMoney()));
+        assertTrue(service.getInstrumentPositionsAt(saved.getName(), LocalDateTime.of(2020, 12, 1, 0, 0)).isEmpty());
+    }
+
+    @Test
+    void shouldPageProcessedOperationsNewestFirst() {
+        var saved = service.save(createTestDto());
+        var sameDate = LocalDateTime.of(2021, 2, 1, 10, 0);
+        for (var date : new LocalDateTime[]{LocalDateTime.of(2021, 1, 1, 10, 0), sameDate, sameDate,
+                LocalDateTime.of(2021, 3, 1, 10, 0), LocalDateTime.of(2021, 4, 1, 10, 0)}) {
+            operationsService.addMoney(AddMoneyDto.builder()
+                    .portfolioName(saved.getName())
+                    .value(BigDecimal.TEN)
+                    .whenAdd(date)
+                    .build());
+        }
+        var all = service.getProcessedOperations(saved.getName());
+
+        List<OperationDto> paged = new ArrayList<>();
+        Long afterId = null;
+        OperationsPageDto page;
+        do {
+            page = service.getProcessedOperations(saved.getName(), null, afterId, 2);
+            assertTrue(page.getOperations().size() <= 2);
+            paged.addAll(page.getOperations());
+            afterId = page.getNextAfterId();
+        } while (page.hasNext());
+
+        assertEquals(5, all.size());
+        assertEquals(all.stream().map(OperationDto::getId).collect(Collectors.toList()),
+                paged.stream().map(OperationDto::getId).collect(Collectors.toList()));
+        assertEquals(LocalDateTime.of(2021, 4, 1, 10, 0), paged.get(0).getWhenAdd());
+        assertEquals(sameDate, paged.get(3).getWhenAdd());
+        assertEquals(sameDate, paged.get(2).getWhenAdd());
+        assertTrue(paged.get(2).getId() > paged.get(3).getId());
+    }
+
+    @Test
+    void shouldFilterProcessedOperationsByTypeSymbolAndDates() {
+        var saved = service.save(createTestDto());
+        var share = createInstrumentDto("FLTSHR", "SHR");
+        instrumentsService.save(share);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("100"))
+                .whenAdd(LocalDateTime.of(2021, 1, 1, 10, 0))
+                .build());
+        operationsService.buyInstrument(BuyInstrumentDto.builder()
+                .portfolioName(saved.getName())
+                .symbol(share.getSymbol())
+                .amount(2)
+                .price(BigDecimal.TEN)
+                .whenAdd(LocalDateTime.of(2021, 1, 2, 10, 0))
+                .build());
+        for (var date : new LocalDateTime[]{LocalDateTime.of(2021, 6, 1, 10, 0), LocalDateTime.of(2022, 6, 1, 10, 0)}) {
+            operationsService.dividend(DividendDto.builder()
+                    .portfolioName(saved.getName())
+                    .symbol(share.getSymbol())
+                    .amount(2)
+                    .price(BigDecimal.ONE)
+                    .whenAdd(date)
+                    .build());
+        }
+
+        var dividends2021 = service.getProcessedOperations(saved.getName(), OperationsFilterDto.builder()
+                .type(OperationType.DIVIDEND)
+                .symbol(share.getSymbol())
+                .from(LocalDateTime.of(2021, 1, 1, 0, 0))
+                .to(LocalDateTime.of(2022, 1, 1, 0, 0))
+                .build(), null, 10);
+        var bySymbol = service.getProcessedOperations(saved.getName(), OperationsFilterDto.builder()
+                .symbol(share.getSymbol())
+                .build(), null, 10);
+
+        assertEquals(1, dividends2021.getOperations().size());
+        assertEquals(LocalDateTime.of(2021, 6, 1, 10, 0), dividends2021.getOperations().get(0).getWhenAdd());
+        assertEquals(3, bySymbol.getOperations().size());
+        assertFalse(bySymbol.hasNext());
+    }
+
+    @Test
+    void shouldLoadInstrumentPositionsWithSingleStatement(StatementsCounter statementsCounter) {
+        var saved = service.save(createTestDto());
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("100"))
+                .build());
+        var currencies = new String[]{"USD", "EUR", "RUB"};
+        var categories = new String[]{"SHR", "GOVB", "ETFSHR"};
+        for (int i = 0; i < 5; i++) {
+            var instrumentDto = createInstrumentDto("FTJSHR" + i, categories[i % categories.length]);
+            instrumentDto.setBaseCurrencyCode(currencies[i % currencies.length]);
+            instrumentsService.save(instrumentDto);
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(saved.getName())
+                    .symbol(instrumentDto.getSymbol())
+                    .amount(1)
+                    .price(BigDecimal.TEN)
+                    .build());
+        }
+
+        var positions = statementsCounter.assertAtMost(1, () -> service.getInstrumentPositions(saved.getName()));
+
+        assertEquals(5, positions.size());
+    }
+
+    @Test
+    void shouldBuildDashboardEqualToSeparateQueries(StatementsCounter statementsCounter) {
+        var dto = createTestDto();
+        dto.setCategoriesTargetDistribution("SHR-60,GOVB-40");
+        var saved = service.save(dto);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("100"))
+                .build());
+        var categories = new String[]{"SHR", "GOVB", "ETFSHR"};
+        for (int i = 0; i < 5; i++) {
+            var instrumentDto = createInstrumentDto("DSHSHR" + i, categories[i % categories.length]);
+            instrumentsService.save(instrumentDto);
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(saved.getName())
+                    .symbol(instrumentDto.getSymbol())
+                    .amount(i + 1)
+                    .price(BigDecimal.ONE)
+                    .build());
+        }
+        addPrice("DSHSHR0", new BigDecimal("5"), LocalDateTime.of(2021, 1, 1, 10, 0));
+        service.toggleExcludeInstrumentFromDistribution("DSHSHR4", saved.getName());
+        var date = LocalDateTime.of(2021, 6, 1, 0, 0);
+        service.getDashboard(saved.getName(), date);
+
+        // portfolio with positions and target distribution, prices are cached
+        var dashboard = statementsCounter.assertAtMost(2, () -> service.getDashboard(saved.getName(), date));
+
+        assertEquals(service.getPortfolio(saved.getName()).orElseThrow(), dashboard.getPortfolio());
+        assertEquals(service.getInstrumentPositions(saved.getName()), dashboard.getPositions());
+        assertEquals(service.getTargetInstrumentsDistribution(saved.getName()), dashboard.getTargetDistribution());
+        assertEquals(service.getInstrumentsDistributionByAccoutingPrice(saved.getName()),
+                dashboard.getDistributionByAccountingPrice());
+        assertEquals(service.getInstrumentsDistributionByActualPrice(saved.getName(), date),
+                dashboard.getDistributionByActualPrice());
+        assertNotEquals(dashboard.getDistributionByAccountingPrice(), dashboard.getDistributionByActualPrice());
+    }
+
+    @Test
+    void shouldGetRebalancePropositionWithBoundedStatements(StatementsCounter statementsCounter) {
+        var saved = createPortfolioWithPositions("RBSSHR", 5);
+        for (int i = 0; i < 5; i++) {
+            addPrice("RBSSHR" + i, new BigDecimal(i + 5), LocalDateTime.of(2021, 1, 1, 10, 0));
+        }
+        service.getRebalanceProposition(saved.getName(), true);
+
+        // portfolio with positions and target distribution, prices are cached
+        var proposition = statementsCounter.assertAtMost(2,
+                () -> service.getRebalanceProposition(saved.getName(), true));
+
+        assertNotNull(proposition);
+    }
+
+    @Test
+    void shouldPageProcessedOperationsWithBoundedStatements(StatementsCounter statementsCounter) {
+        var saved = createPortfolioWithPositions("OPSSHR", 5);
+
+        // portfolio existence and operations with instruments, without select for each instrument
+        var page = statementsCounter.assertAtMost(2,
+                () -> service.getProcessedOperations(saved.getName(), null, null, 10));
+        var all = statementsCounter.assertAtMost(2, () -> service.getProcessedOperations(saved.getName()));
+
+        assertEquals(6, page.getOperations().size());
+        assertEquals(6, all.size());
+    }
+
+    private PortfolioDto createPortfolioWithPositions(String symbolPrefix, int positions) {
+        var dto = createTestDto();
+        dto.setCategoriesTargetDistribution("SHR-60,GOVB-40");
+        var saved = service.save(dto);
+        operationsService.addMoney(AddMoneyDto.builder()
+                .portfolioName(saved.getName())
+                .value(new BigDecimal("1000"))
+                .build());
+        var categories = new String[]{"SHR", "GOVB", "ETFSHR"};
+        for (int i = 0; i < positions; i++) {
+            var instrumentDto = createInstrumentDto(symbolPrefix + i, categories[i % categories.length]);
+            instrumentsService.save(instrumentDto);
+            operationsService.buyInstrument(BuyInstrumentDto.builder()
+                    .portfolioName(saved.getName())
+                    .symbol(instrumentDto.getSymbol())
+                    .amount(i + 1)
+                    .price(BigDecimal.ONE)
+                    .build());
+        }
+        return saved;
+    }
+
+    private void addPrice(String symbol, BigDecimal price, LocalDateTime whenAdd) {
+        var dto = new InstrumentPriceDto();
+        dto.setSymbol(symbol);
+        dto.setPrice(price);
+        dto.setWhenAdd(whenAdd);
+        instrumentsPriceService.addPrice(dto);
+    }
+
+    private BigDecimal getPercent(PortfolioInstrumentsDistributionDto distribution, String categoryCode) {
+        return distribution.getPercentByCategory().entrySet().stream()
+                .filter(entry -> entry.getKey().getCode().equals(categoryCode))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(BigDecimal.ZERO);
+    }
+
+    private InstrumentDto createInstrumentDto(String symbol, String categoryCode) {
+        var dto = new InstrumentDto();
+        dto.setSymbol(symbol);
+        dto.setName(symbol + " LLC");
+        dto.setType("SHARE");
+        dto.setBaseCurrencyCode("USD");
+        dto.setCategoryCode(categoryCode);
+        return dto;
+    }
+
     private PortfolioDto createTestDto() {
         var dto = new PortfolioDto();
         dto.setName(UUID.randomUUID().toString());